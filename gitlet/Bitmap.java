@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, laid out like a roaring bitmap.
+ * Values are split by their high 16 bits into chunks; a chunk holding few
+ * values keeps them as a sorted array of their low 16 bits, and one
+ * holding more than ARRAY_MAX keeps a plain 65536-bit bitmap. Sets of
+ * commit positions are mostly long runs of recent commits, which land in
+ * bitmap chunks, with a few scattered old ones, which stay small.
+ * Serialized as the number of chunks, then for each its key, a kind byte
+ * and either a count and the low 16 bits of every value, or its words.
+ * @author Zheyuan Hu
+ */
+public class Bitmap {
+    /** most values an array chunk holds before it becomes a bitmap. */
+    static final int ARRAY_MAX = 4096;
+    /** number of low bits of a value kept inside its chunk. */
+    private static final int CHUNK_BITS = 16;
+    /** log2 of the number of bits in a long. */
+    private static final int WORD_SHIFT = 6;
+    /** number of longs in a bitmap chunk. */
+    private static final int WORDS = (1 << CHUNK_BITS) >>> WORD_SHIFT;
+    /** initial capacity of an array chunk. */
+    private static final int INITIAL_VALUES = 4;
+    /** kind byte of an array chunk. */
+    private static final int ARRAY = 0;
+    /** kind byte of a bitmap chunk. */
+    private static final int BITS = 1;
+    /** mask of the low 16 bits. */
+    private static final int LOW = 0xffff;
+    /** keys (high 16 bits) of the chunks, sorted. */
+    private int[] _keys = new int[0];
+    /** the chunks, in key order. */
+    private Chunk[] _chunks = new Chunk[0];
+
+    /** The values of a bitmap sharing their high 16 bits. */
+    private static class Chunk {
+        /** sorted low bits, when an array chunk. */
+        private char[] _values;
+        /** number of values in _values. */
+        private int _size;
+        /** the bits, when a bitmap chunk. */
+        private long[] _words;
+
+        /**
+         * constructor for an empty array chunk.
+         */
+        Chunk() {
+            _values = new char[INITIAL_VALUES];
+        }
+
+        /**
+         * @return a copy of this chunk.
+         */
+        Chunk copy() {
+            Chunk result = new Chunk();
+            if (_words != null) {
+                result._words = _words.clone();
+                result._values = null;
+            } else {
+                result._values = Arrays.copyOf(_values, _size);
+                result._size = _size;
+            }
+            return result;
+        }
+
+        /**
+         * @param v low bits of a value.
+         * @return whether the chunk holds V.
+         */
+        boolean contains(char v) {
+            if (_words != null) {
+                return (_words[v >>> WORD_SHIFT] & (1L << v)) != 0;
+            }
+            return Arrays.binarySearch(_values, 0, _size, v) >= 0;
+        }
+
+        /**
+         * add V to the chunk.
+         * @param v low bits of a value.
+         */
+        void add(char v) {
+            if (_words != null) {
+                _words[v >>> WORD_SHIFT] |= 1L << v;
+                return;
+            }
+            int at = Arrays.binarySearch(_values, 0, _size, v);
+            if (at >= 0) {
+                return;
+            }
+            if (_size == ARRAY_MAX) {
+                toBits();
+                add(v);
+                return;
+            }
+            at = -at - 1;
+            if (_size == _values.length) {
+                _values = Arrays.copyOf(_values, Math.min(ARRAY_MAX,
+                    Math.max(INITIAL_VALUES, _size * 2)));
+            }
+            System.arraycopy(_values, at, _values, at + 1, _size - at);
+            _values[at] = v;
+            _size++;
+        }
+
+        /**
+         * turn this array chunk into a bitmap chunk.
+         */
+        private void toBits() {
+            _words = new long[WORDS];
+            for (int i = 0; i < _size; i++) {
+                _words[_values[i] >>> WORD_SHIFT] |= 1L << _values[i];
+            }
+            _values = null;
+            _size = 0;
+        }
+
+        /**
+         * add every value of OTHER to this chunk.
+         * @param other a chunk.
+         */
+        void or(Chunk other) {
+            if (other._words != null) {
+                if (_words == null) {
+                    toBits();
+                }
+                for (int i = 0; i < WORDS; i++) {
+                    _words[i] |= other._words[i];
+                }
+            } else {
+                for (int i = 0; i < other._size; i++) {
+                    add(other._values[i]);
+                }
+            }
+        }
+
+        /**
+         * remove every value of OTHER from this chunk.
+         * @param other a chunk.
+         */
+        void andNot(Chunk other) {
+            if (_words != null && other._words != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    _words[i] &= ~other._words[i];
+                }
+            } else if (_words != null) {
+                for (int i = 0; i < other._size; i++) {
+                    char v = other._values[i];
+                    _words[v >>> WORD_SHIFT] &= ~(1L << v);
+                }
+            } else {
+                int kept = 0;
+                for (int i = 0; i < _size; i++) {
+                    if (!other.contains(_values[i])) {
+                        _values[kept] = _values[i];
+                        kept++;
+                    }
+                }
+                _size = kept;
+            }
+        }
+
+        /**
+         * @return number of values in the chunk.
+         */
+        int cardinality() {
+            if (_words == null) {
+                return _size;
+            }
+            int count = 0;
+            for (long word : _words) {
+                count += Long.bitCount(word);
+            }
+            return count;
+        }
+
+        /**
+         * call ACTION on each value of the chunk, in increasing order.
+         * @param high high bits of the chunk's values.
+         * @param action action.
+         */
+        void forEach(int high, IntConsumer action) {
+            if (_words == null) {
+                for (int i = 0; i < _size; i++) {
+                    action.accept(high | _values[i]);
+                }
+                return;
+            }
+            for (int i = 0; i < WORDS; i++) {
+                long word = _words[i];
+                while (word != 0) {
+                    action.accept(high | (i << WORD_SHIFT)
+                                  | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param key high 16 bits of a value.
+     * @return index of the chunk with KEY, or where it would be inserted,
+     *         encoded as by Arrays.binarySearch.
+     */
+    private int find(int key) {
+        return Arrays.binarySearch(_keys, key);
+    }
+
+    /**
+     * @param value a non-negative int.
+     * @return whether the set holds VALUE.
+     */
+    public boolean contains(int value) {
+        int at = find(value >>> CHUNK_BITS);
+        return at >= 0 && _chunks[at].contains((char) (value & LOW));
+    }
+
+    /**
+     * add VALUE to the set.
+     * @param value a non-negative int.
+     */
+    public void add(int value) {
+        chunk(value >>> CHUNK_BITS).add((char) (value & LOW));
+    }
+
+    /**
+     * @param key high 16 bits.
+     * @return the chunk with KEY, added if need be.
+     */
+    private Chunk chunk(int key) {
+        int at = find(key);
+        if (at >= 0) {
+            return _chunks[at];
+        }
+        at = -at - 1;
+        int n = _keys.length;
+        _keys = Arrays.copyOf(_keys, n + 1);
+        _chunks = Arrays.copyOf(_chunks, n + 1);
+        System.arraycopy(_keys, at, _keys, at + 1, n - at);
+        System.arraycopy(_chunks, at, _chunks, at + 1, n - at);
+        _keys[at] = key;
+        _chunks[at] = new Chunk();
+        return _chunks[at];
+    }
+
+    /**
+     * add every value of OTHER to this set.
+     * @param other a set.
+     */
+    public void or(Bitmap other) {
+        for (int i = 0; i < other._keys.length; i++) {
+            int at = find(other._keys[i]);
+            if (at >= 0) {
+                _chunks[at].or(other._chunks[i]);
+            } else {
+                chunk(other._keys[i]);
+                _chunks[find(other._keys[i])] = other._chunks[i].copy();
+            }
+        }
+    }
+
+    /**
+     * remove every value of OTHER from this set.
+     * @param other a set.
+     */
+    public void andNot(Bitmap other) {
+        for (int i = 0; i < other._keys.length; i++) {
+            int at = find(other._keys[i]);
+            if (at >= 0) {
+                _chunks[at].andNot(other._chunks[i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of values in the set.
+     */
+    public int cardinality() {
+        int count = 0;
+        for (Chunk chunk : _chunks) {
+            count += chunk.cardinality();
+        }
+        return count;
+    }
+
+    /**
+     * call ACTION on each value of the set, in increasing order.
+     * @param action action.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < _keys.length; i++) {
+            _chunks[i].forEach(_keys[i] << CHUNK_BITS, action);
+        }
+    }
+
+    /**
+     * @return the set serialized.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(_keys.length);
+            for (int i = 0; i < _keys.length; i++) {
+                Chunk chunk = _chunks[i];
+                out.writeChar(_keys[i]);
+                if (chunk._words != null) {
+                    out.write(BITS);
+                    for (long word : chunk._words) {
+                        out.writeLong(word);
+                    }
+                } else {
+                    out.write(ARRAY);
+                    out.writeChar(chunk._size);
+                    for (int j = 0; j < chunk._size; j++) {
+                        out.writeChar(chunk._values[j]);
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param data a set serialized by toBytes.
+     * @return the set.
+     */
+    public static Bitmap fromBytes(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        Bitmap result = new Bitmap();
+        int n = in.getInt();
+        result._keys = new int[n];
+        result._chunks = new Chunk[n];
+        for (int i = 0; i < n; i++) {
+            result._keys[i] = in.getChar();
+            Chunk chunk = new Chunk();
+            if (in.get() == BITS) {
+                chunk._values = null;
+                chunk._words = new long[WORDS];
+                in.asLongBuffer().get(chunk._words);
+                in.position(in.position() + WORDS * Long.BYTES);
+            } else {
+                chunk._size = in.getChar();
+                chunk._values = new char[chunk._size];
+                in.asCharBuffer().get(chunk._values, 0, chunk._size);
+                in.position(in.position() + chunk._size * Character.BYTES);
+            }
+            result._chunks[i] = chunk;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * Reachability bitmaps of selected commits: for each, the set of commit
+ * graph positions of the commit and all its ancestors. They are kept in
+ * .gitlet/bitmaps, one file per commit named by its ID, holding the
+ * commit's position followed by the serialized Bitmap. Working out what
+ * a commit reaches walks the graph down from it only until it meets a
+ * commit with a stored bitmap, whose bits are taken whole; the result is
+ * stored in turn, so the branch tips asked about by push and fetch make
+ * the next walk short. Only the MAX_STORED most recent bitmaps are kept.
+ * @author Zheyuan Hu
+ */
+public class BitmapIndex {
+    /** number of bitmaps kept. */
+    static final int MAX_STORED = 32;
+    /** directory of the bitmaps. */
+    private final File _dir;
+    /** IDs of the commits with stored bitmaps, or null until listed. */
+    private HashSet<String> _stored;
+
+    /**
+     * constructor.
+     * @param repoDir gitlet directory.
+     */
+    public BitmapIndex(File repoDir) {
+        _dir = Utils.join(repoDir, "bitmaps");
+    }
+
+    /**
+     * @return IDs of the commits with stored bitmaps.
+     */
+    private HashSet<String> stored() {
+        if (_stored == null) {
+            _stored = new HashSet<>();
+            String[] names = _dir.list();
+            if (names != null) {
+                _stored.addAll(Arrays.asList(names));
+            }
+        }
+        return _stored;
+    }
+
+    /**
+     * @param graph the commit graph.
+     * @param pos position of a commit.
+     * @return the stored bitmap of the commit at POS, or null if there is
+     *         none or it was made for a different graph.
+     */
+    private Bitmap load(CommitGraph graph, int pos) {
+        String id = graph.id(pos);
+        if (!stored().contains(id)) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(
+            Utils.readContents(Utils.join(_dir, id)));
+        if (data.getInt() != pos) {
+            return null;
+        }
+        byte[] bits = new byte[data.remaining()];
+        data.get(bits);
+        return Bitmap.fromBytes(bits);
+    }
+
+    /**
+     * @param graph the commit graph.
+     * @param pos position of a commit.
+     * @return positions of the commit at POS and all its ancestors.
+     */
+    public Bitmap reachable(CommitGraph graph, int pos) {
+        Bitmap known = load(graph, pos);
+        if (known != null) {
+            return known;
+        }
+        Bitmap result = new Bitmap();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        result.add(pos);
+        queue.add(pos);
+        while (!queue.isEmpty()) {
+            int p = queue.remove();
+            Bitmap below = p == pos ? null : load(graph, p);
+            if (below != null) {
+                result.or(below);
+                continue;
+            }
+            for (int q : new int[] {graph.parent(p), graph.mergeParent(p)}) {
+                if (q != CommitGraph.NONE && !result.contains(q)) {
+                    result.add(q);
+                    queue.add(q);
+                }
+            }
+        }
+        store(graph.id(pos), pos, result);
+        return result;
+    }
+
+    /**
+     * save BITS as the bitmap of commit ID, dropping the oldest bitmaps
+     * past MAX_STORED.
+     * @param id commit ID.
+     * @param pos its position.
+     * @param bits what it reaches.
+     */
+    private void store(String id, int pos, Bitmap bits) {
+        _dir.mkdirs();
+        byte[] data = bits.toBytes();
+        ByteBuffer out = ByteBuffer.allocate(Integer.BYTES + data.length);
+        out.putInt(pos).put(data);
+        Utils.writeContents(Utils.join(_dir, id), out.array());
+        stored().add(id);
+        File[] files = _dir.listFiles();
+        if (files != null && files.length > MAX_STORED) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (int i = 0; i < files.length - MAX_STORED; i++) {
+                files[i].delete();
+                stored().remove(files[i].getName());
+            }
+        }
+    }
+
+    /**
+     * delete every stored bitmap, as when the positions they refer to
+     * are no longer valid.
+     */
+    public void clear() {
+        File[] files = _dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        _stored = null;
+    }
+}
@@ -1,32 +1,41 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
+ * A snapshot of a working file, known by its ID: the SHA-1 of the file's
+ * name followed by its contents. The ID is computed by streaming the
+ * file through the digest a buffer at a time, so no file, however large,
+ * is held in memory; the contents are read again only if asked for.
  * @author Zheyuan Hu
  */
 public class Blob implements Serializable {
     /** serial ID. */
     private static final long serialVersionUID = -8000747699547298285L;
+    /** size of the buffer files are hashed through. */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** direct buffer of each thread that hashes files, reused. */
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
     /** file name. */
     private String _fileName;
     /**unique ID. */
     private String _id;
-    /** contents. */
-    private byte[] _contents;
-    /** contents in string. */
-    private String _string;
+
     /**
      * constructor.
      * @param fileName file name.
      */
     public Blob(String fileName) {
         _fileName = fileName;
-        _contents = Utils.readContents(new File(_fileName));
-        _string = Utils.readContentsAsString(new File(_fileName));
         _id = generateID();
     }
 
@@ -34,8 +43,42 @@ public class Blob implements Serializable {
      * @return SHA-1 ID
      */
     public String generateID() {
-        ArrayList<Object> hash = new ArrayList<>(List.of(_fileName, _contents));
-        return Utils.sha1(hash);
+        MessageDigest md = newDigest(_fileName);
+        ByteBuffer buffer = BUFFER.get();
+        try (FileChannel in = FileChannel.open(new File(_fileName).toPath(),
+                                               StandardOpenOption.READ)) {
+            buffer.clear();
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.bytesToHex(md.digest());
+    }
+
+    /**
+     * @return a new SHA-1 digest.
+     */
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    /**
+     * @param fileName file name.
+     * @return a new SHA-1 digest that has been fed FILENAME, ready for
+     *         the file's contents.
+     */
+    static MessageDigest newDigest(String fileName) {
+        MessageDigest md = newDigest();
+        md.update(fileName.getBytes(StandardCharsets.UTF_8));
+        return md;
     }
 
     /**
@@ -46,17 +89,17 @@ public class Blob implements Serializable {
     }
 
     /**
-     * @return contents
+     * @return contents, read from the file afresh.
      */
     public byte[] getContents() {
-        return _contents;
+        return Utils.readContents(new File(_fileName));
     }
 
     /**
-     * @return content as string
+     * @return content as string, read from the file afresh.
      */
     public String getString() {
-        return _string;
+        return new String(getContents(), StandardCharsets.UTF_8);
     }
 
     /**
@@ -1,15 +1,12 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.HashSet;
 
 /**
  * @author Zheyuan Hu
  */
-public class Branch implements Serializable {
-    /** serial ID. */
-    private static final long serialVersionUID = -2464501943803134589L;
+public class Branch {
     /** SHA-1 head ID. */
     private String _headID;
     /** A set of tracked files.**/
@@ -26,13 +23,44 @@ public class Branch implements Serializable {
     }
 
     /**
-     * update branch's head to the given commit ID.
-     * @param id
+     * read a branch from its ref file, whose first line is the head commit
+     * ID and whose remaining lines are the tracked files.
+     * @param file ref file.
+     * @param name branch name.
+     * @return the branch.
+     */
+    public static Branch read(File file, String name) {
+        Branch branch = new Branch(name);
+        String[] lines = Utils.readContentsAsString(file).split("\n");
+        if (!lines[0].isEmpty()) {
+            branch._headID = lines[0];
+        }
+        for (int i = 1; i < lines.length; i++) {
+            branch._trackedFiles.add(lines[i]);
+        }
+        return branch;
+    }
+
+    /**
+     * @return the contents of this branch's ref file.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        if (_headID != null) {
+            text.append(_headID);
+        }
+        text.append("\n");
+        _trackedFiles.stream().sorted()
+            .forEach(f -> text.append(f).append("\n"));
+        return text.toString();
+    }
+
+    /**
+     * update branch's head to the given commit.
+     * @param head new head commit.
      */
-    public void updateHead(String id) {
-        _headID = id;
-        File file = Utils.join(CommandLineTools.COMMIT_DIR, id);
-        Commit head = Utils.readObject(file, Commit.class);
+    public void updateHead(Commit head) {
+        _headID = head.getID();
         _trackedFiles.addAll(head.getBlobs().keySet());
     }
 
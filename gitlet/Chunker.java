@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks. A gear hash is rolled over
+ * the bytes, each step shifting it left and adding a random value for the
+ * byte, so it depends only on the last 64 bytes read; a chunk ends where
+ * its low bits are all zero, once the chunk has reached MIN_CHUNK bytes,
+ * or at MAX_CHUNK bytes. Boundaries therefore move with the content: an
+ * edit changes the chunks around it, and the rest of the file cuts into
+ * the same chunks as before. Chunks average about 1 MiB, and no more than
+ * MAX_CHUNK bytes are ever buffered.
+ * @author Zheyuan Hu
+ */
+public class Chunker {
+    /** smallest chunk, except the last. */
+    static final int MIN_CHUNK = 256 * 1024;
+    /** largest chunk. */
+    static final int MAX_CHUNK = 4 * 1024 * 1024;
+    /** a chunk ends where these bits of the hash are zero. */
+    static final long MASK = (1L << 20) - 1;
+    /** number of trailing bytes that decide the hash. */
+    private static final int WINDOW = Long.SIZE;
+    /** seed of the gear table, fixed so chunks agree across runs. */
+    private static final long SEED = 0x676974_6c6574L;
+    /** random value of each byte. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /** the stream. */
+    private final InputStream _in;
+    /** bytes read but not yet returned. */
+    private final byte[] _buffer = new byte[MAX_CHUNK];
+    /** number of bytes in _buffer. */
+    private int _length;
+
+    /**
+     * constructor.
+     * @param in the stream to split.
+     */
+    public Chunker(InputStream in) {
+        _in = in;
+    }
+
+    /**
+     * @return the next chunk, or null at the end of the stream.
+     * @throws IOException if the stream cannot be read.
+     */
+    public byte[] next() throws IOException {
+        _length += _in.readNBytes(_buffer, _length, MAX_CHUNK - _length);
+        if (_length == 0) {
+            return null;
+        }
+        int cut = _length;
+        long hash = 0;
+        for (int i = Math.max(0, MIN_CHUNK - WINDOW); i < _length; i++) {
+            hash = (hash << 1) + GEAR[_buffer[i] & 0xff];
+            if (i + 1 >= MIN_CHUNK && (hash & MASK) == 0) {
+                cut = i + 1;
+                break;
+            }
+        }
+        byte[] chunk = Arrays.copyOf(_buffer, cut);
+        System.arraycopy(_buffer, cut, _buffer, 0, _length - cut);
+        _length -= cut;
+        return chunk;
+    }
+}
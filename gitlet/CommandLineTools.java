@@ -4,45 +4,78 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.PatternSyntaxException;
 /**
  * CommandLineTools.
  * @author Zheyuan Hu
  */
-public class CommandLineTools implements Dumpable {
-    /** serial ID. */
-    private static final long serialVersionUID = -2343050904013249351L;
+public class CommandLineTools {
     /** repo. */
     private Repository _repo;
-    /** map String to file location. */
-    private final HashMap<String, Remote> _remoteMap;
+    /** map String to file location, read when first needed. */
+    private HashMap<String, Remote> _remoteMap;
+    /** contents of the remotes file as last read or written. */
+    private String _savedRemotes = "";
     /** CWD. */
     public static final String CWD = System.getProperty("user.dir");
     /** CWD Path. */
     public static final File CWD_DIR = new File(CWD);
     /** Gitlet folder. */
     public static final File REPO_DIR = new File(CWD_DIR, ".gitlet");
-    /** command file. */
-    public static final File CLI_FILE = new File(REPO_DIR, "cliConf");
+    /** remotes file. Each line is a remote's name, a tab and its path. */
+    public static final File REMOTES_FILE = new File(REPO_DIR, "remotes");
     /** commit folder. */
     public static final File COMMIT_DIR = Utils.join(REPO_DIR, "commits");
-    /** staging area folder. */
-    public static final File STAGE_DIR = Utils.join(REPO_DIR, "stage");
+    /** object store folder, holding file contents keyed by blob ID. */
+    public static final File OBJECT_DIR = Utils.join(REPO_DIR, "objects");
     /** untracked files folder. */
     public static final File UNTRACKED_DIR = Utils.join(REPO_DIR, "untracked");
 
     /**
      * Constructor. Initializes vars.
-     * @throws IOException
      */
     public CommandLineTools() {
-        if (CLI_FILE.exists()) {
-            CommandLineTools temp =
-                Utils.readObject(CLI_FILE, CommandLineTools.class);
-            _repo = temp._repo;
-            _remoteMap = temp._remoteMap;
-        } else {
-            _repo = new Repository();
+        _repo = new Repository();
+    }
+
+    /**
+     * @return remotes by name.
+     */
+    public HashMap<String, Remote> getRemotes() {
+        if (_remoteMap == null) {
             _remoteMap = new HashMap<>();
+            if (REMOTES_FILE.isFile()) {
+                _savedRemotes = Utils.readContentsAsString(REMOTES_FILE);
+                for (String line : _savedRemotes.split("\n")) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        getRemotes().put(line.substring(0, tab),
+                            new Remote(new File(line.substring(tab + 1))));
+                    }
+                }
+            }
+        }
+        return _remoteMap;
+    }
+
+    /**
+     * write the pieces of the repo and its remotes this command changed.
+     */
+    public void save() {
+        _repo.save();
+        if (_remoteMap == null || !REPO_DIR.isDirectory()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        _remoteMap.keySet().stream().sorted().forEach(name -> text
+            .append(name).append('\t')
+            .append(_remoteMap.get(name).getRepoPath().getPath())
+            .append('\n'));
+        if (!text.toString().equals(_savedRemotes)) {
+            Utils.writeContents(REMOTES_FILE, text.toString());
+            _savedRemotes = text.toString();
         }
     }
 
@@ -62,22 +95,22 @@ public class CommandLineTools implements Dumpable {
             initialize();
             break;
         case "add":
-            _repo.add(operands.remove(0));
+            add(operands);
             break;
         case "rm":
-            _repo.remove(operands.remove(0));
+            _repo.remove(WorkTree.key(operands.remove(0)));
             break;
         case "commit":
             commit(operands);
             break;
         case "log":
-            _repo.log();
+            _repo.log(new LogOptions(operands));
             break;
         case "global-log":
-            _repo.globalLog();
+            _repo.globalLog(new LogOptions(operands));
             break;
         case "find":
-            _repo.find(operands.remove(0));
+            find(operands);
             break;
         case "status":
             _repo.status();
@@ -97,6 +130,9 @@ public class CommandLineTools implements Dumpable {
         case "merge":
             _repo.merge(operands.remove(0));
             break;
+        case "gc":
+            _repo.gc();
+            break;
         default:
             operands.add(0, commandStr);
             executeRemote(operands);
@@ -144,12 +180,28 @@ public class CommandLineTools implements Dumpable {
         } else {
             REPO_DIR.mkdirs();
             COMMIT_DIR.mkdir();
-            STAGE_DIR.mkdir();
+            OBJECT_DIR.mkdir();
             UNTRACKED_DIR.mkdir();
             _repo.initialize();
         }
     }
 
+    /**
+     * add every file named by the operands: files, directories and globs.
+     * @param operands args
+     */
+    public void add(ArrayList<String> operands) {
+        if (operands.isEmpty()) {
+            exitWithMessage("Incorrect operands.");
+        }
+        WorkTree tree = new WorkTree(CWD_DIR);
+        TreeSet<String> names = new TreeSet<>();
+        for (String operand : operands) {
+            names.addAll(tree.expand(operand));
+        }
+        _repo.addAll(new ArrayList<>(names));
+    }
+
     /**
      * make commit using args.
      * @param operands args
@@ -164,6 +216,28 @@ public class CommandLineTools implements Dumpable {
         }
     }
 
+    /**
+     * find commits by message: either MESSAGE, or one of --word WORDS,
+     * --substring TEXT or --regex PATTERN.
+     * @param operands args
+     */
+    public void find(ArrayList<String> operands) {
+        if (operands.size() == 1) {
+            _repo.find(null, operands.get(0));
+            return;
+        }
+        if (operands.size() != 2
+            || !List.of("--word", "--substring", "--regex")
+                .contains(operands.get(0))) {
+            exitWithMessage("Incorrect operands.");
+        }
+        try {
+            _repo.find(operands.get(0), operands.get(1));
+        } catch (PatternSyntaxException excp) {
+            exitWithMessage("Incorrect operands.");
+        }
+    }
+
     /**
      * @param operands args
      */
@@ -174,7 +248,8 @@ public class CommandLineTools implements Dumpable {
             break;
         case 2:
             if (operands.remove(0).equals("--")) {
-                _repo.checkoutFileInCurrent(operands.remove(0));
+                _repo.checkoutFileInCurrent(
+                    WorkTree.key(operands.remove(0)));
             } else {
                 exitWithMessage("Incorrect operands.");
             }
@@ -184,7 +259,8 @@ public class CommandLineTools implements Dumpable {
             if (!operands.remove(0).equals("--")) {
                 exitWithMessage("Incorrect operands.");
             } else {
-                _repo.checkoutFileByID(operands.remove(0), commitID);
+                _repo.checkoutFileByID(WorkTree.key(operands.remove(0)),
+                                       commitID);
             }
             break;
         default:
@@ -193,13 +269,6 @@ public class CommandLineTools implements Dumpable {
         }
     }
 
-    /**
-     * refresh the repo's untracked set.
-     */
-    public void refreshUntracked() {
-        _repo.updateUntracked();
-    }
-
     /**
      * get repo.
      * @return repo
@@ -214,15 +283,10 @@ public class CommandLineTools implements Dumpable {
      * @param folder folder location.
      */
     public void addRemote(String name, String folder) {
-        if (_remoteMap.keySet().contains(name)) {
+        if (getRemotes().keySet().contains(name)) {
             exitWithMessage("A remote with that name already exists.");
         }
-        File dir = new File(folder);
-        Remote remote = new Remote(dir);
-        if (dir.exists()) {
-            remote.getCLI().getRepo().setRepoDir(new File(folder));
-        }
-        _remoteMap.put(name, remote);
+        getRemotes().put(name, new Remote(new File(folder)));
     }
 
     /**
@@ -230,10 +294,10 @@ public class CommandLineTools implements Dumpable {
      * @param name remote name.
      */
     public void removeRemote(String name) {
-        if (!_remoteMap.keySet().contains(name)) {
+        if (!getRemotes().keySet().contains(name)) {
             exitWithMessage("A remote with that name does not exist.");
         }
-        _remoteMap.remove(name);
+        getRemotes().remove(name);
     }
 
     /**
@@ -242,29 +306,34 @@ public class CommandLineTools implements Dumpable {
      * @param branch branch name.
      */
     public void push(String remote, String branch) {
-        if (!_remoteMap.keySet().contains(remote)
-            || !_remoteMap.get(remote).remoteExist()) {
+        if (!getRemotes().keySet().contains(remote)
+            || !getRemotes().get(remote).remoteExist()) {
             exitWithMessage("Remote directory not found.");
         }
-        var rr = _remoteMap.get(remote);
-        var r = rr.getCLI().getRepo();
+        var rr = getRemotes().get(remote);
+        var r = rr.getRepo();
         if (!r.getBranches().containsKey(branch)) {
             exitWithMessage("That remote does not have that branch.");
         }
         var rCommitPath = rr.getPath("commits");
-        var rHeadID = r.getHeadCommit().getID();
-        if (!_repo.hasCommit(rHeadID)) {
+        var rHeadID = r.getBranches().get(branch).getHeadID();
+        CommitGraph graph = _repo.getCommitGraph();
+        int rHead = graph.position(rHeadID);
+        Bitmap send = _repo.reachable(_repo.getHeadBranch().getHeadID());
+        if (rHead == CommitGraph.NONE || !send.contains(rHead)) {
             exitWithMessage("Please pull down remote changes before pushing.");
         }
-        _repo.getCommits().stream().filter(id -> {
-            Commit c = _repo.getCommit(id);
-            return _repo.getHeadBranch().getName().equals(c.getBranch())
-                    && !r.getCommits().contains(id);
-        }).forEach(id -> {
-            r.copyCommit(_repo.getCommit(id), rCommitPath);
+        send.andNot(_repo.reachable(rHeadID));
+        send.forEach(pos -> {
+            String id = graph.id(pos);
+            if (!r.hasCommit(id)) {
+                Commit c = _repo.getCommit(id);
+                r.copyObjects(c, _repo);
+                r.copyCommit(c, rCommitPath);
+            }
         });
         r.resetRemote(_repo.getHeadCommit().getID(), rCommitPath);
-        saveRemoteCLI();
+        r.save();
     }
 
     /**
@@ -273,25 +342,37 @@ public class CommandLineTools implements Dumpable {
      * @param branch branch name.
      */
     public void fetch(String remote, String branch) {
-        if (!_remoteMap.keySet().contains(remote)
-            || !_remoteMap.get(remote).remoteExist()) {
+        if (!getRemotes().keySet().contains(remote)
+            || !getRemotes().get(remote).remoteExist()) {
             exitWithMessage("Remote directory not found.");
         }
-        var rr = _remoteMap.get(remote);
-        var r = rr.getCLI().getRepo();
+        var rr = getRemotes().get(remote);
+        var r = rr.getRepo();
         if (!r.getBranches().containsKey(branch)) {
             exitWithMessage("That remote does not have that branch.");
         }
-        var rCommitPath = rr.getPath("commits");
-        r.getCommits().forEach(id -> {
+        String tracking = remote + "/" + branch;
+        String rHeadID = r.getBranches().get(branch).getHeadID();
+        CommitGraph graph = r.getCommitGraph();
+        Bitmap fetch = r.reachable(rHeadID);
+        if (_repo.getBranches().containsKey(tracking)) {
+            String have = _repo.getBranches().get(tracking).getHeadID();
+            if (have != null && r.hasCommit(have)) {
+                fetch.andNot(r.reachable(have));
+            }
+        } else {
+            _repo.getBranches().put(tracking, new Branch(tracking));
+        }
+        fetch.forEach(pos -> {
+            String id = graph.id(pos);
             if (!_repo.hasCommit(id)) {
                 var commit = r.getCommit(id);
-                commit.setBranchName(remote + "/" + branch);
+                _repo.copyObjects(commit, r);
+                commit.setBranchName(tracking);
                 _repo.copyCommit(commit, CommandLineTools.COMMIT_DIR);
             }
         });
-        _repo.getBranches().get(remote + "/" + branch)
-                .updateHead(r.getHeadCommit().getID());
+        _repo.getBranches().get(tracking).updateHead(r.getCommit(rHeadID));
     }
 
     /**
@@ -300,9 +381,6 @@ public class CommandLineTools implements Dumpable {
      * @param branch branch name.
      */
     public void pull(String remote, String branch) {
-        var rr = _remoteMap.get(remote);
-        rr.loadCLI();
-        var r = rr.getCLI().getRepo();
         fetch(remote, branch);
         _repo.merge(remote + "/" + branch);
     }
@@ -316,19 +394,4 @@ public class CommandLineTools implements Dumpable {
         System.exit(0);
     }
 
-    /**
-     * save all clis when exit.
-     */
-    public void saveRemoteCLI() {
-        _remoteMap.forEach((name, r) -> {
-            if (r != null && r.getRepoPath().exists()) {
-                Utils.writeObject(r.getPath("cliConf"), r.getCLI());
-            }
-        });
-    }
-
-    @Override
-    public void dump() {
-        System.out.println(_repo.getCommits().size());
-    }
 }
@@ -1,18 +1,17 @@
 package gitlet;
 
-import java.io.Serializable;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 
 /**
  * @author Zheyuan Hu
  */
-public class Commit implements Serializable {
-    /** serial ID. */
-    private static final long serialVersionUID = 3263038956317828008L;
+public class Commit {
+    /** format of timestamps. */
+    static final DateTimeFormatter TIME_FORMAT =
+        DateTimeFormatter.ofPattern("EEE " + "MMM d HH:mm:ss yyyy xxxx");
     /** log message. **/
     private String _log;
     /** timestamp. **/
@@ -25,8 +24,18 @@ public class Commit implements Serializable {
     private String _id;
     /** the hashcode of the commit that we are merging from. */
     private String _mergeFrom;
-    /** A map mapping file name to blob. **/
-    private HashMap<String, Blob> _blobs = new HashMap<>();
+    /** approximate heap overhead of a small object, in bytes. */
+    private static final int OBJECT_OVERHEAD = 48;
+    /** approximate heap overhead of a hash map entry, in bytes. */
+    private static final int ENTRY_OVERHEAD = 32;
+    /** ID of the tree of this commit's files, or null for a commit in
+     *  the first format, which listed its files itself. **/
+    private String _tree;
+    /** A map mapping file name to blob ID, or null for a commit whose
+     *  files are read from its tree. **/
+    private HashMap<String, String> _blobs;
+    /** trees of the repo, from which the file map is read. */
+    private TreeStore _trees;
 
     /**
      * constructor.
@@ -38,36 +47,26 @@ public class Commit implements Serializable {
         _log = log;
         _parent = null;
         _timestamp = getZonedTime();
+        _tree = Tree.EMPTY_ID;
         _id = generateID();
     }
 
     /**
-     * constructor.
+     * constructor. The file map is read from TREE only when asked for.
      * @param parent parent commit.
      * @param branch branch name.
      * @param log log messages.
-     * @param stage stage.
-     * @param removed removed.
+     * @param tree ID of the tree of the commit's files.
+     * @param trees trees of the repo.
      */
     public Commit(Commit parent, String branch,
-            String log, Stage stage, HashSet<String> removed) {
+            String log, String tree, TreeStore trees) {
         _parent = parent.getID();
         _branch = branch;
         _log = log;
         _timestamp = getZonedTime();
-        HashMap<String, Blob> parentBlobs = parent.getBlobs();
-        for (String s : parentBlobs.keySet()) {
-            if (!removed.contains(s)) {
-                _blobs.put(s, parentBlobs.get(s));
-            }
-        }
-        for (String fileName: stage.getAll().keySet()) {
-            if (_blobs.containsKey(fileName)) {
-                _blobs.replace(fileName, stage.get(fileName));
-            } else {
-                _blobs.put(fileName, stage.get(fileName));
-            }
-        }
+        _tree = tree;
+        _trees = trees;
         _id = generateID();
     }
 
@@ -77,24 +76,59 @@ public class Commit implements Serializable {
      * @param mergeFrom merge commit.
      * @param branch branch name.
      * @param log log messages.
-     * @param stage stage.
-     * @param removed removed.
+     * @param tree ID of the tree of the commit's files.
+     * @param trees trees of the repo.
      */
     Commit(Commit parent, Commit mergeFrom, String branch,
-            String log, Stage stage, HashSet<String> removed) {
-        this(parent, branch, log, stage, removed);
+            String log, String tree, TreeStore trees) {
+        this(parent, branch, log, tree, trees);
         _mergeFrom = mergeFrom.getID();
     }
 
+    /**
+     * constructor for a commit read back from disk.
+     * @param header the commit's header.
+     * @param tree ID of the tree of the commit's files, or null.
+     * @param blobs map from file name to blob ID, or null to read it from
+     *              TREE.
+     * @param trees trees of the repo, or null.
+     */
+    Commit(CommitHeader header, String tree, HashMap<String, String> blobs,
+           TreeStore trees) {
+        _id = header.getID();
+        _parent = header.getParent();
+        _mergeFrom = header.getMergeFrom();
+        _timestamp = header.getTimestamp();
+        _log = header.getLog();
+        _branch = header.getBranch();
+        _tree = tree;
+        _blobs = blobs;
+        _trees = trees;
+    }
+
+    /**
+     * @return this commit's header.
+     */
+    public CommitHeader getHeader() {
+        return new CommitHeader(_id, _parent, _mergeFrom, _timestamp, _log,
+                                _branch);
+    }
+
     /**
      * @return the zoned time of this instant.
      * example: Wed Dec 31 16:00:00 1969 -0800
      */
     public String getZonedTime() {
         ZonedDateTime now = ZonedDateTime.now();
-        DateTimeFormatter formatter =
-            DateTimeFormatter.ofPattern("EEE " + "MMM d HH:mm:ss yyyy xxxx");
-        return now.format(formatter);
+        return now.format(TIME_FORMAT);
+    }
+
+    /**
+     * @param timestamp a timestamp as getZonedTime writes it.
+     * @return the same instant in seconds since the epoch.
+     */
+    static long epochSecond(String timestamp) {
+        return ZonedDateTime.parse(timestamp, TIME_FORMAT).toEpochSecond();
     }
 
     /**
@@ -113,17 +147,64 @@ public class Commit implements Serializable {
         if (_parent != null) {
             hash.add(_parent);
         }
-        for (String s : _blobs.keySet()) {
-            hash.add(_blobs.get(s).getID());
-        }
+        hash.add(_tree);
         return Utils.sha1(hash);
     }
 
     /**
-     * @return blobs
+     * @return rough estimate of this commit's heap footprint in bytes.
+     */
+    public long estimatedSize() {
+        long size = OBJECT_OVERHEAD;
+        for (String s : new String[] {_log, _timestamp, _parent, _branch,
+                                      _id, _mergeFrom}) {
+            size += stringSize(s);
+        }
+        if (_blobs == null) {
+            return size;
+        }
+        for (String name : _blobs.keySet()) {
+            size += ENTRY_OVERHEAD + stringSize(name)
+                + stringSize(_blobs.get(name));
+        }
+        return size;
+    }
+
+    /**
+     * @param s a string, possibly null.
+     * @return rough heap footprint of S in bytes.
+     */
+    private static long stringSize(String s) {
+        if (s == null) {
+            return 0;
+        }
+        return OBJECT_OVERHEAD + s.length();
+    }
+
+    /**
+     * @return map from file name to blob ID. A commit with a tree does
+     *         not keep the map, which is flattened from the tree and
+     *         cached by the trees of the repo, so a cached commit stays
+     *         the size it was charged.
+     */
+    public HashMap<String, String> getBlobs() {
+        if (_blobs != null) {
+            return _blobs;
+        } else if (_tree.equals(Tree.EMPTY_ID)) {
+            return new HashMap<>();
+        } else if (_trees == null) {
+            throw Utils.error("Commit %s was read without its trees.",
+                _id);
+        }
+        return _trees.flatten(_tree);
+    }
+
+    /**
+     * @return ID of the tree of this commit's files, or null for a commit
+     *         in the first format.
      */
-    public HashMap<String, Blob> getBlobs() {
-        return _blobs;
+    public String getTree() {
+        return _tree;
     }
 
     /**
@@ -0,0 +1,292 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Compact, versioned binary encoding of commits. A commit is laid out as
+ * <pre>
+ *   magic "GLC" | version | flags
+ *   id (20 raw bytes) | parent (20, if flagged) | merge parent (20, if
+ *   flagged)
+ *   timestamp | log | branch                      (varint length + UTF-8)
+ *   tree ID (20 raw bytes)
+ * </pre>
+ * Everything up to the tree ID is the header, which can be decoded on
+ * its own. Commits in version 1 of the format, which list their files
+ * instead of naming a tree, are still read and written: in place of the
+ * tree ID they have a file count (varint), then for each file in name
+ * order the shared prefix length with the previous name (varint), the
+ * rest of the name (varint length + UTF-8) and the blob ID (20 raw
+ * bytes).
+ * @author Zheyuan Hu
+ */
+public class CommitCodec {
+    /** leading bytes of every encoded commit. */
+    private static final byte[] MAGIC = {'G', 'L', 'C'};
+    /** current format version. */
+    static final int VERSION = 2;
+    /** format version of commits that list their own files. */
+    static final int FILE_TABLE_VERSION = 1;
+    /** flag: the commit has a parent. */
+    private static final int HAS_PARENT = 1;
+    /** flag: the commit has a merged-in parent. */
+    private static final int HAS_MERGE = 2;
+    /** low seven bits of a varint byte. */
+    private static final int VARINT_MASK = 0x7f;
+    /** continuation bit of a varint byte. */
+    private static final int VARINT_MORE = 0x80;
+
+    /**
+     * @param commit commit.
+     * @return the encoded commit.
+     */
+    public static byte[] encode(Commit commit) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(commit.getTree() == null ? FILE_TABLE_VERSION : VERSION);
+        int flags = 0;
+        if (commit.getParent() != null) {
+            flags |= HAS_PARENT;
+        }
+        if (commit.getMergeFrom() != null) {
+            flags |= HAS_MERGE;
+        }
+        out.write(flags);
+        writeID(out, commit.getID());
+        if (commit.getParent() != null) {
+            writeID(out, commit.getParent());
+        }
+        if (commit.getMergeFrom() != null) {
+            writeID(out, commit.getMergeFrom());
+        }
+        writeString(out, commit.getTimestamp());
+        writeString(out, commit.getLog());
+        writeString(out, commit.getBranch());
+        if (commit.getTree() != null) {
+            writeID(out, commit.getTree());
+            return out.toByteArray();
+        }
+        TreeMap<String, String> files = new TreeMap<>(commit.getBlobs());
+        writeVarint(out, files.size());
+        String previous = "";
+        for (String name : files.keySet()) {
+            int shared = sharedPrefix(previous, name);
+            writeVarint(out, shared);
+            writeString(out, name.substring(shared));
+            writeID(out, files.get(name));
+            previous = name;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data an encoded commit.
+     * @return the commit, which cannot read its files from its tree.
+     */
+    public static Commit decode(byte[] data) {
+        return decode(data, null);
+    }
+
+    /**
+     * @param data an encoded commit.
+     * @param trees trees of the repo holding the commit.
+     * @return the commit.
+     */
+    public static Commit decode(byte[] data, TreeStore trees) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            CommitHeader header = readHeader(in);
+            if (data[MAGIC.length] == VERSION) {
+                return new Commit(header, readID(in), null, trees);
+            }
+            int count = readVarint(in);
+            HashMap<String, String> files = new HashMap<>(count * 2);
+            String previous = "";
+            for (int i = 0; i < count; i++) {
+                int shared = readVarint(in);
+                String name = previous.substring(0, shared) + readString(in);
+                files.put(name, readID(in));
+                previous = name;
+            }
+            return new Commit(header, null, files, trees);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * write COMMIT to the object file FILE.
+     * @param file file.
+     * @param commit commit.
+     * @param level zlib level.
+     */
+    public static void write(File file, Commit commit, int level) {
+        ObjectStore.writeFile(file, encode(commit), level);
+    }
+
+    /**
+     * @param data an encoded commit.
+     * @return its header.
+     */
+    public static CommitHeader decodeHeader(byte[] data) {
+        try {
+            return readHeader(
+                new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * @param in stream positioned at the start of an encoded commit.
+     * @return the header, leaving IN positioned at the tree ID or, in
+     *         version 1, the file count.
+     * @throws IOException on read errors or malformed data.
+     */
+    static CommitHeader readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        int version = in.readUnsignedByte();
+        if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1]
+            || magic[2] != MAGIC[2]) {
+            throw Utils.error("Not a commit object.");
+        }
+        if (version != VERSION && version != FILE_TABLE_VERSION) {
+            throw Utils.error("Unsupported commit format version %d.",
+                version);
+        }
+        int flags = in.readUnsignedByte();
+        String id = readID(in);
+        String parent = null;
+        String mergeFrom = null;
+        if ((flags & HAS_PARENT) != 0) {
+            parent = readID(in);
+        }
+        if ((flags & HAS_MERGE) != 0) {
+            mergeFrom = readID(in);
+        }
+        String timestamp = readString(in);
+        String log = readString(in);
+        String branch = readString(in);
+        return new CommitHeader(id, parent, mergeFrom, timestamp, log, branch);
+    }
+
+    /**
+     * @param a a string.
+     * @param b another string.
+     * @return length of the longest common prefix of A and B.
+     */
+    private static int sharedPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * write a full hexadecimal ID to OUT as raw bytes.
+     * @param out stream.
+     * @param id ID.
+     */
+    private static void writeID(ByteArrayOutputStream out, String id) {
+        out.write(Utils.hexToBytes(id), 0, CommitIndex.RAW_LENGTH);
+    }
+
+    /**
+     * @param in stream.
+     * @return the hexadecimal form of the raw ID read from IN.
+     * @throws IOException on read errors.
+     */
+    private static String readID(DataInputStream in) throws IOException {
+        byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+        in.readFully(raw);
+        return Utils.bytesToHex(raw);
+    }
+
+    /**
+     * write S to OUT as a varint length followed by its UTF-8 bytes.
+     * @param out stream.
+     * @param s string.
+     */
+    static void writeString(ByteArrayOutputStream out, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param in stream.
+     * @return a string written by writeString.
+     * @throws IOException on read errors.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readVarint(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * write the non-negative VALUE to OUT seven bits at a time, low bits
+     * first, setting the high bit of every byte but the last.
+     * @param out stream.
+     * @param value value.
+     */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        int v = value;
+        while ((v & ~VARINT_MASK) != 0) {
+            out.write((v & VARINT_MASK) | VARINT_MORE);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    /**
+     * @param in buffer, advanced past the value.
+     * @return a value written by writeVarint.
+     */
+    static int readVarint(ByteBuffer in) {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.get() & 0xff;
+            result |= (b & VARINT_MASK) << shift;
+            shift += 7;
+        } while ((b & VARINT_MORE) != 0);
+        return result;
+    }
+
+    /**
+     * @param in stream.
+     * @return a value written by writeVarint.
+     * @throws IOException on read errors.
+     */
+    static int readVarint(InputStream in) throws IOException {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("truncated varint");
+            }
+            result |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return result;
+            }
+            shift += 7;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The shape of a repo's history, kept apart from the commits so ancestry
+ * questions never decode a commit. Every commit has a position; parents
+ * always come before their children. For each position the graph holds
+ * the commit's ID, the positions of its parent and of the commit it
+ * merged from (NONE if absent), its generation number (1 for a root, one
+ * more than the largest of its parents' otherwise) and its time in
+ * seconds since the epoch. A commit can only be an ancestor of another
+ * with a larger generation, which lets walks stop early.
+ * Kept in .gitlet/commit-graph as a header (magic, version) followed by
+ * fixed-size records in position order, so adding a commit is an append.
+ * A graph made with no directory lives only in memory.
+ * @author Zheyuan Hu
+ */
+public class CommitGraph {
+    /** position of an absent parent. */
+    static final int NONE = -1;
+    /** first bytes of the file. */
+    static final byte[] MAGIC = {'G', 'L', 'C', 'G'};
+    /** file format version. */
+    static final int VERSION = 1;
+    /** length of the header. */
+    private static final int HEADER = MAGIC.length + 1;
+    /** length of a record: ID, two parents, generation and time. */
+    private static final int RECORD = CommitIndex.RAW_LENGTH + 4 + 4 + 4 + 8;
+    /** initial capacity of the arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+    /** file the graph is kept in, or null for a graph in memory. */
+    private final File _file;
+    /** number of commits. */
+    private int _size;
+    /** commit IDs by position. */
+    private String[] _ids = new String[INITIAL_CAPACITY];
+    /** parent positions. */
+    private int[] _parents = new int[INITIAL_CAPACITY];
+    /** merged-from positions. */
+    private int[] _merges = new int[INITIAL_CAPACITY];
+    /** generation numbers. */
+    private int[] _generations = new int[INITIAL_CAPACITY];
+    /** commit times in seconds since the epoch. */
+    private long[] _times = new long[INITIAL_CAPACITY];
+    /** positions by commit ID. */
+    private final HashMap<String, Integer> _positions = new HashMap<>();
+    /** Order in which commits leave the walk's queue: larger generation
+     *  first, then later time, then larger position. */
+    private final Comparator<Integer> _order = (p, q) -> {
+        if (_generations[p] != _generations[q]) {
+            return Integer.compare(_generations[q], _generations[p]);
+        } else if (_times[p] != _times[q]) {
+            return Long.compare(_times[q], _times[p]);
+        }
+        return Integer.compare(q, p);
+    };
+
+    /**
+     * constructor for an empty graph kept only in memory.
+     */
+    CommitGraph() {
+        _file = null;
+    }
+
+    /**
+     * constructor. Loads the graph kept in REPODIR, if any.
+     * @param repoDir gitlet directory.
+     */
+    public CommitGraph(File repoDir) {
+        _file = Utils.join(repoDir, "commit-graph");
+        if (!_file.isFile()) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+        byte[] magic = new byte[MAGIC.length];
+        if (data.remaining() < HEADER) {
+            throw Utils.error("Bad commit graph %s.", _file);
+        }
+        data.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || data.get() != VERSION) {
+            throw Utils.error("Bad commit graph %s.", _file);
+        }
+        byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+        while (data.remaining() >= RECORD) {
+            data.get(raw);
+            append(Utils.bytesToHex(raw), data.getInt(), data.getInt(),
+                   data.getInt(), data.getLong());
+        }
+    }
+
+    /**
+     * @return number of commits in the graph.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return position of the commit, or NONE if the graph lacks it.
+     */
+    public int position(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        return _positions.getOrDefault(id, NONE);
+    }
+
+    /**
+     * @param pos position.
+     * @return ID of the commit at POS.
+     */
+    public String id(int pos) {
+        return _ids[pos];
+    }
+
+    /**
+     * @param pos position.
+     * @return position of the parent of the commit at POS, or NONE.
+     */
+    public int parent(int pos) {
+        return _parents[pos];
+    }
+
+    /**
+     * @param pos position.
+     * @return position of the commit the commit at POS merged from, or
+     *         NONE.
+     */
+    public int mergeParent(int pos) {
+        return _merges[pos];
+    }
+
+    /**
+     * @param pos position.
+     * @return generation number of the commit at POS.
+     */
+    public int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /**
+     * @param pos position.
+     * @return time of the commit at POS in seconds since the epoch.
+     */
+    public long time(int pos) {
+        return _times[pos];
+    }
+
+    /**
+     * add a commit whose parents are already in the graph, appending it
+     * to the graph file.
+     * @param header header of the commit.
+     * @return whether the commit was added; false if a parent is missing.
+     */
+    public boolean add(CommitHeader header) {
+        if (position(header.getID()) != NONE) {
+            return true;
+        }
+        int parent = position(header.getParent());
+        int merge = position(header.getMergeFrom());
+        if ((parent == NONE && header.getParent() != null)
+            || (merge == NONE && header.getMergeFrom() != null)) {
+            return false;
+        }
+        add(header.getID(), parent, merge, header.getEpochSecond());
+        return true;
+    }
+
+    /**
+     * add a commit whose parents are at the given positions.
+     * @param id commit ID.
+     * @param parent parent position, or NONE.
+     * @param merge merged-from position, or NONE.
+     * @param time commit time in seconds since the epoch.
+     */
+    void add(String id, int parent, int merge, long time) {
+        int generation = 1;
+        if (parent != NONE) {
+            generation = _generations[parent] + 1;
+        }
+        if (merge != NONE) {
+            generation = Math.max(generation, _generations[merge] + 1);
+        }
+        append(id, parent, merge, generation, time);
+        if (_file == null) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            if (!_file.isFile()) {
+                out.write(MAGIC);
+                out.write(VERSION);
+            }
+            writeRecord(out, _size - 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (FileOutputStream out = new FileOutputStream(_file, true)) {
+            bytes.writeTo(out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param out stream.
+     * @param pos position of the record to write.
+     * @throws IOException if OUT fails.
+     */
+    private void writeRecord(DataOutputStream out, int pos)
+        throws IOException {
+        out.write(Utils.hexToBytes(_ids[pos]));
+        out.writeInt(_parents[pos]);
+        out.writeInt(_merges[pos]);
+        out.writeInt(_generations[pos]);
+        out.writeLong(_times[pos]);
+    }
+
+    /**
+     * add a record to the arrays.
+     * @param id commit ID.
+     * @param parent parent position.
+     * @param merge merged-from position.
+     * @param generation generation number.
+     * @param time commit time.
+     */
+    private void append(String id, int parent, int merge, int generation,
+                        long time) {
+        if (_size == _ids.length) {
+            int capacity = _size * 2;
+            _ids = Arrays.copyOf(_ids, capacity);
+            _parents = Arrays.copyOf(_parents, capacity);
+            _merges = Arrays.copyOf(_merges, capacity);
+            _generations = Arrays.copyOf(_generations, capacity);
+            _times = Arrays.copyOf(_times, capacity);
+        }
+        _ids[_size] = id;
+        _parents[_size] = parent;
+        _merges[_size] = merge;
+        _generations[_size] = generation;
+        _times[_size] = time;
+        _positions.put(id, _size);
+        _size++;
+    }
+
+    /**
+     * @param pos position of a commit.
+     * @return the positions of all its ancestors, itself included.
+     */
+    public BitSet ancestors(int pos) {
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        seen.set(pos);
+        queue.add(pos);
+        while (!queue.isEmpty()) {
+            int p = queue.remove();
+            for (int q : new int[] {_parents[p], _merges[p]}) {
+                if (q != NONE && !seen.get(q)) {
+                    seen.set(q);
+                    queue.add(q);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /**
+     * @param ancestor position of a commit.
+     * @param descendant position of another.
+     * @return whether ANCESTOR is DESCENDANT or one of its ancestors.
+     *         Commits with a generation no larger than ANCESTOR's cannot
+     *         lead to it and are not explored.
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        int floor = _generations[ancestor];
+        BitSet seen = new BitSet(_size);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(descendant);
+        seen.set(descendant);
+        while (!queue.isEmpty()) {
+            int p = queue.remove();
+            if (p == ancestor) {
+                return true;
+            }
+            for (int q : new int[] {_parents[p], _merges[p]}) {
+                if (q != NONE && !seen.get(q) && _generations[q] >= floor) {
+                    seen.set(q);
+                    queue.add(q);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param a position of a commit.
+     * @param b position of another.
+     * @return position of the best latest common ancestor of A and B, the
+     *         one with the largest generation (then the latest time, then
+     *         the largest position), or NONE if they share no history.
+     */
+    public int mergeBase(int a, int b) {
+        int best = NONE;
+        for (int base : mergeBases(a, b)) {
+            if (best == NONE || _order.compare(base, best) < 0) {
+                best = base;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param a position of a commit.
+     * @param b position of another.
+     * @return positions of every latest common ancestor of A and B: the
+     *         common ancestors that no other common ancestor descends from.
+     *         There is more than one after criss-cross merges.
+     */
+    public List<Integer> mergeBases(int a, int b) {
+        List<Integer> candidates = new Walk(a, b).run();
+        List<Integer> result = new ArrayList<>();
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != c && _generations[other] > _generations[c]
+                    && isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A walk down from two commits at once, in generation order, painting
+     * each commit reached with the side (or sides) it was reached from. A
+     * commit painted with both sides is a common ancestor; it is recorded
+     * unless it is already stale, and its own ancestors are painted stale,
+     * since none of them can be a latest one. Because children always
+     * leave the queue before their parents, the walk can stop as soon as
+     * every commit left in the queue is stale.
+     */
+    private class Walk {
+        /** commits reached from the first tip. */
+        private final BitSet _fromA = new BitSet(_size);
+        /** commits reached from the second tip. */
+        private final BitSet _fromB = new BitSet(_size);
+        /** commits below some common ancestor. */
+        private final BitSet _stale = new BitSet(_size);
+        /** commits now in the queue. */
+        private final BitSet _queued = new BitSet(_size);
+        /** commits waiting to be visited. */
+        private final PriorityQueue<Integer> _queue =
+            new PriorityQueue<>(_order);
+        /** number of queued commits that are not stale. */
+        private int _live;
+
+        /**
+         * constructor.
+         * @param a position of the first tip.
+         * @param b position of the second tip.
+         */
+        Walk(int a, int b) {
+            _fromA.set(a);
+            _fromB.set(b);
+            enqueue(a);
+            if (b != a) {
+                enqueue(b);
+            }
+        }
+
+        /**
+         * @param p position to queue.
+         */
+        private void enqueue(int p) {
+            _queued.set(p);
+            _queue.add(p);
+            if (!_stale.get(p)) {
+                _live++;
+            }
+        }
+
+        /**
+         * @return the common ancestors found, some possibly redundant.
+         */
+        List<Integer> run() {
+            List<Integer> found = new ArrayList<>();
+            while (_live > 0) {
+                int p = _queue.remove();
+                _queued.clear(p);
+                if (!_stale.get(p)) {
+                    _live--;
+                    if (_fromA.get(p) && _fromB.get(p)) {
+                        found.add(p);
+                        _stale.set(p);
+                    }
+                }
+                paint(p, _parents[p]);
+                paint(p, _merges[p]);
+            }
+            return found;
+        }
+
+        /**
+         * give parent Q the paint of child P, queueing Q if that changed.
+         * @param p position of the child.
+         * @param q position of the parent, or NONE.
+         */
+        private void paint(int p, int q) {
+            if (q == NONE) {
+                return;
+            }
+            boolean changed = false;
+            if (_fromA.get(p) && !_fromA.get(q)) {
+                _fromA.set(q);
+                changed = true;
+            }
+            if (_fromB.get(p) && !_fromB.get(q)) {
+                _fromB.set(q);
+                changed = true;
+            }
+            if (_stale.get(p) && !_stale.get(q)) {
+                _stale.set(q);
+                changed = true;
+                if (_queued.get(q)) {
+                    _live--;
+                }
+            }
+            if (changed && !_queued.get(q)) {
+                enqueue(q);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+/**
+ * The fields of a commit other than its file table: what log and
+ * global-log print and what history walks follow. Decoding just these
+ * avoids materializing the blob table of every commit visited.
+ * @author Zheyuan Hu
+ */
+public class CommitHeader {
+    /** SHA-1 code of the commit. */
+    private final String _id;
+    /** parent's hashcode, or null for the initial commit. */
+    private final String _parent;
+    /** merged-in parent's hashcode, or null. */
+    private final String _mergeFrom;
+    /** timestamp. */
+    private final String _timestamp;
+    /** log message. */
+    private final String _log;
+    /** branch name. */
+    private final String _branch;
+
+    /**
+     * constructor.
+     * @param id commit ID.
+     * @param parent parent ID, or null.
+     * @param mergeFrom merged-in parent ID, or null.
+     * @param timestamp timestamp.
+     * @param log log message.
+     * @param branch branch name.
+     */
+    CommitHeader(String id, String parent, String mergeFrom,
+                 String timestamp, String log, String branch) {
+        _id = id;
+        _parent = parent;
+        _mergeFrom = mergeFrom;
+        _timestamp = timestamp;
+        _log = log;
+        _branch = branch;
+    }
+
+    /**
+     * @return getter
+     */
+    public String getID() {
+        return _id;
+    }
+
+    /**
+     * @return getter
+     */
+    public String getParent() {
+        return _parent;
+    }
+
+    /**
+     * @return getter
+     */
+    public String getMergeFrom() {
+        return _mergeFrom;
+    }
+
+    /**
+     * @return getter
+     */
+    public String getTimestamp() {
+        return _timestamp;
+    }
+
+    /**
+     * @return the commit time in seconds since the epoch.
+     */
+    public long getEpochSecond() {
+        return Commit.epochSecond(_timestamp);
+    }
+
+    /**
+     * @return getter
+     */
+    public String getLog() {
+        return _log;
+    }
+
+    /**
+     * @return getter
+     */
+    public String getBranch() {
+        return _branch;
+    }
+}
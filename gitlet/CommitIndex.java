@@ -0,0 +1,211 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A persistent index of every commit ID in a repo, answering lookups by
+ * abbreviated ID in logarithmic time. IDs are kept as raw 20-byte SHA-1
+ * values in a sorted base file, which is binary searched, plus a short
+ * unsorted journal of IDs added since the base was last written. The
+ * journal is folded into the base once it grows past a threshold, so an
+ * addition costs one small append.
+ * @author Zheyuan Hu
+ */
+public class CommitIndex {
+    /** length of a raw SHA-1 ID in bytes. */
+    static final int RAW_LENGTH = Utils.UID_LENGTH / 2;
+    /** journal length, in IDs, past which it is merged into the base. */
+    private static final int MERGE_THRESHOLD = 1024;
+    /** sorted base file. */
+    private final File _baseFile;
+    /** journal of recent additions. */
+    private final File _journalFile;
+    /** contents of the base file. */
+    private byte[] _base;
+    /** contents of the journal file. */
+    private byte[] _journal;
+
+    /**
+     * constructor. Loads the index kept in REPODIR, if any.
+     * @param repoDir gitlet directory.
+     */
+    public CommitIndex(File repoDir) {
+        _baseFile = Utils.join(repoDir, "commit-index");
+        _journalFile = Utils.join(repoDir, "commit-index.log");
+        _base = readIfExists(_baseFile);
+        _journal = readIfExists(_journalFile);
+    }
+
+    /**
+     * @param file file.
+     * @return contents of FILE, or an empty array if it does not exist.
+     */
+    private static byte[] readIfExists(File file) {
+        if (!file.isFile()) {
+            return new byte[0];
+        }
+        return Utils.readContents(file);
+    }
+
+    /**
+     * @return number of IDs in the index.
+     */
+    public int size() {
+        return (_base.length + _journal.length) / RAW_LENGTH;
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return whether the index holds ID.
+     */
+    public boolean contains(String id) {
+        return id.length() == Utils.UID_LENGTH && matches(id, 1).size() == 1;
+    }
+
+    /**
+     * record a new commit ID, appending it to the journal.
+     * @param id full commit ID.
+     */
+    public void add(String id) {
+        if (contains(id)) {
+            return;
+        }
+        byte[] raw = Utils.hexToBytes(id);
+        try (FileOutputStream out = new FileOutputStream(_journalFile, true)) {
+            out.write(raw);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update commit index: %s",
+                excp.getMessage());
+        }
+        byte[] journal = Arrays.copyOf(_journal, _journal.length + RAW_LENGTH);
+        System.arraycopy(raw, 0, journal, _journal.length, RAW_LENGTH);
+        _journal = journal;
+        if (_journal.length / RAW_LENGTH > MERGE_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * merge the journal into the sorted base and rewrite both files.
+     */
+    public void compact() {
+        int n = size();
+        byte[][] ids = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            ids[i] = raw(i);
+        }
+        Arrays.sort(ids, Arrays::compareUnsigned);
+        byte[] base = new byte[n * RAW_LENGTH];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || !Arrays.equals(ids[i], ids[i - 1])) {
+                System.arraycopy(ids[i], 0, base, count * RAW_LENGTH,
+                    RAW_LENGTH);
+                count++;
+            }
+        }
+        _base = Arrays.copyOf(base, count * RAW_LENGTH);
+        _journal = new byte[0];
+        File temp = Utils.join(_baseFile.getParentFile(), "commit-index.tmp");
+        Utils.writeContents(temp, _base);
+        if (!temp.renameTo(_baseFile)) {
+            Utils.writeContents(_baseFile, _base);
+            temp.delete();
+        }
+        _journalFile.delete();
+    }
+
+    /**
+     * @param i position of an ID, counting the base and then the journal.
+     * @return the raw ID at position I.
+     */
+    private byte[] raw(int i) {
+        int offset = i * RAW_LENGTH;
+        if (offset < _base.length) {
+            return Arrays.copyOfRange(_base, offset, offset + RAW_LENGTH);
+        }
+        offset -= _base.length;
+        return Arrays.copyOfRange(_journal, offset, offset + RAW_LENGTH);
+    }
+
+    /**
+     * @return every ID in the index, sorted.
+     */
+    public List<String> all() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < size(); i++) {
+            result.add(Utils.bytesToHex(raw(i)));
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * find the IDs starting with PREFIX, stopping after LIMIT matches.
+     * A caller asking for two matches can tell a unique prefix from an
+     * ambiguous one.
+     * @param prefix hexadecimal ID prefix.
+     * @param limit maximum number of matches to return.
+     * @return the matching full IDs.
+     */
+    public List<String> matches(String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        String p = prefix.toLowerCase();
+        int lo = 0;
+        int hi = _base.length / RAW_LENGTH;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(_base, mid * RAW_LENGTH, p) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int n = _base.length / RAW_LENGTH;
+        for (int i = lo; i < n && result.size() < limit
+                 && comparePrefix(_base, i * RAW_LENGTH, p) == 0; i++) {
+            result.add(Utils.bytesToHex(raw(i)));
+        }
+        for (int i = 0; i < _journal.length && result.size() < limit;
+             i += RAW_LENGTH) {
+            if (comparePrefix(_journal, i, p) == 0) {
+                String id = Utils.bytesToHex(
+                    Arrays.copyOfRange(_journal, i, i + RAW_LENGTH));
+                if (!result.contains(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * compare the raw ID at OFFSET in DATA with a hexadecimal prefix,
+     * looking only at as many digits as PREFIX has.
+     * @param data raw IDs.
+     * @param offset start of the ID.
+     * @param prefix lower-case hexadecimal prefix.
+     * @return negative, zero or positive as the ID sorts before, matches,
+     *         or sorts after PREFIX.
+     */
+    private static int comparePrefix(byte[] data, int offset, String prefix) {
+        int digits = Math.min(prefix.length(), Utils.UID_LENGTH);
+        for (int i = 0; i < digits; i++) {
+            int b = data[offset + i / 2] & 0xff;
+            int nibble = b & 0xf;
+            if (i % 2 == 0) {
+                nibble = b >>> 4;
+            }
+            int want = Character.digit(prefix.charAt(i), 16);
+            if (nibble != want) {
+                return nibble - want;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.CompressionBenchmark [COUNT [SIZE]]
+ *  It writes COUNT synthetic source-like files of about SIZE bytes each
+ *  (defaults 2000 and 8192) into a fresh object store at each of several
+ *  compression levels, and prints for each level the bytes on disk, the
+ *  time to write every object and the time to read them all back.
+ *  @author Zheyuan Hu
+ */
+public class CompressionBenchmark {
+    /** levels measured. */
+    private static final int[] LEVELS = {
+        0, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION,
+        Deflater.BEST_COMPRESSION,
+    };
+    /** words the synthetic files are made of. */
+    private static final String[] WORDS = {
+        "public", "static", "void", "int", "return", "if", "else", "for",
+        "while", "new", "String", "List", "Map", "get", "put", "size",
+        "_head", "_branches", "commit", "blob", "=", "+", "(", ")", "{", "}",
+        ";", "0", "1", "null", "true", "false",
+    };
+    /** default number of files. */
+    private static final int DEFAULT_COUNT = 2000;
+    /** default size of a file. */
+    private static final int DEFAULT_SIZE = 8192;
+    /** most words on a line. */
+    private static final int LINE_WORDS = 12;
+    /** nanoseconds per millisecond. */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Run the benchmark with the optional ARGS COUNT and SIZE. */
+    public static void main(String... args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0])
+            : DEFAULT_COUNT;
+        int size = args.length > 1 ? Integer.parseInt(args[1])
+            : DEFAULT_SIZE;
+        Random random = new Random(count * 31L + size);
+        List<byte[]> files = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            byte[] contents = sourceLike(random, size);
+            files.add(contents);
+            ids.add(Utils.sha1("f" + i, contents));
+            total += contents.length;
+        }
+        System.out.printf("%d files, %d bytes%n", count, total);
+        System.out.printf("%6s %12s %7s %10s %10s%n",
+                          "level", "disk bytes", "ratio", "write ms",
+                          "read ms");
+        for (int level : LEVELS) {
+            File dir = Files.createTempDirectory("gitlet-bench").toFile();
+            try {
+                ObjectStore store = new ObjectStore(
+                    dir, new Packs(new File(dir, "packs")), level);
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    store.put(ids.get(i), files.get(i));
+                }
+                long written = System.nanoTime();
+                long read = 0;
+                for (String id : ids) {
+                    read += store.get(id).length;
+                }
+                long done = System.nanoTime();
+                if (read != total) {
+                    throw Utils.error("Read %d bytes, wrote %d.", read, total);
+                }
+                long disk = diskBytes(dir);
+                System.out.printf("%6d %12d %7.3f %10.1f %10.1f%n",
+                                  level, disk, (double) disk / total,
+                                  (written - start) / NANOS_PER_MILLI,
+                                  (done - written) / NANOS_PER_MILLI);
+            } finally {
+                delete(dir);
+            }
+        }
+    }
+
+    /**
+     * @param random source of words.
+     * @param size approximate size.
+     * @return about SIZE bytes of text that looks like source code.
+     */
+    private static byte[] sourceLike(Random random, int size) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < size) {
+            int indent = random.nextInt(4) * 4;
+            text.append(" ".repeat(indent));
+            int words = 1 + random.nextInt(LINE_WORDS);
+            for (int w = 0; w < words; w++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            text.append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param file file or directory.
+     * @return total size of the files under FILE.
+     */
+    private static long diskBytes(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long sum = 0;
+        for (File child : children) {
+            sum += diskBytes(child);
+        }
+        return sum;
+    }
+
+    /**
+     * delete FILE and everything under it.
+     * @param file file or directory.
+     */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,97 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+/**
+ * Settings of a repo, read from the optional properties file
+ * .gitlet/config. Recognized keys:
+ * <pre>
+ *   core.compression   zlib level for stored objects, 0 (store as is)
+ *                      to 9, or -1 for zlib's default (the default)
+ *   core.bigFileThreshold  size in MiB from which a file is stored in
+ *                      shared chunks rather than whole (default 16)
+ * </pre>
+ * @author Zheyuan Hu
+ */
+public class Config {
+    /** key of the compression level. */
+    static final String COMPRESSION = "core.compression";
+    /** key of the big-file threshold. */
+    static final String BIG_FILE_THRESHOLD = "core.bigFileThreshold";
+    /** default big-file threshold, in MiB. */
+    static final int DEFAULT_BIG_FILE_MIB = 16;
+    /** the settings. */
+    private final Properties _properties = new Properties();
+
+    /**
+     * constructor. Reads the config file in REPODIR, if there is one.
+     * @param repoDir gitlet directory.
+     */
+    public Config(File repoDir) {
+        File file = Utils.join(repoDir, "config");
+        if (file.isFile()) {
+            try (Reader in = new FileReader(file)) {
+                _properties.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param key key.
+     * @param fallback value to use if KEY is unset.
+     * @return the integer value of KEY.
+     */
+    public int getInt(String key, int fallback) {
+        String value = _properties.getProperty(key);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException excp) {
+            return badValue(key, value);
+        }
+    }
+
+    /**
+     * @return the zlib level for stored objects.
+     */
+    public int compressionLevel() {
+        int level = getInt(COMPRESSION, Deflater.DEFAULT_COMPRESSION);
+        if (level < Deflater.DEFAULT_COMPRESSION
+            || level > Deflater.BEST_COMPRESSION) {
+            return badValue(COMPRESSION, String.valueOf(level));
+        }
+        return level;
+    }
+
+    /**
+     * @return size in bytes from which a file is stored in chunks.
+     */
+    public long bigFileThreshold() {
+        int mib = getInt(BIG_FILE_THRESHOLD, DEFAULT_BIG_FILE_MIB);
+        if (mib < 1) {
+            return badValue(BIG_FILE_THRESHOLD, String.valueOf(mib));
+        }
+        return (long) mib << 20;
+    }
+
+    /**
+     * report a setting the user got wrong and stop.
+     * @param key key.
+     * @param value value of KEY.
+     * @return never returns.
+     */
+    private int badValue(String key, String value) {
+        System.out.println("Bad value for " + key + ": " + value);
+        System.exit(0);
+        return 0;
+    }
+}
@@ -0,0 +1,110 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decides whether a working file holds a given blob without loading
+ * either into the heap. In order of cost: the stat index answers for a
+ * file whose metadata is unchanged; a file whose size differs from the
+ * object's cannot hold it; a RAW loose object is memory-mapped beside the
+ * working file and the two compared with MappedByteBuffer.mismatch;
+ * anything else is settled by hashing the working file, which streams it
+ * through a reused buffer. A match found by reading the file is recorded
+ * in the stat index, so the next command need not read it again.
+ * @author Zheyuan Hu
+ */
+public class ContentComparator {
+    /** largest part of a file mapped at once. */
+    static final long MAP_WINDOW = 64L << 20;
+    /** the store the blobs live in. */
+    private final ObjectStore _objects;
+    /** the cache of working files' blob IDs. */
+    private final StatIndex _stats;
+
+    /**
+     * constructor.
+     * @param objects the store the blobs live in.
+     * @param stats the cache of working files' blob IDs.
+     */
+    public ContentComparator(ObjectStore objects, StatIndex stats) {
+        _objects = objects;
+        _stats = stats;
+    }
+
+    /**
+     * @param name name of a working file.
+     * @param id blob ID, or null.
+     * @return whether the file exists and holds the blob ID.
+     */
+    public boolean same(String name, String id) {
+        Boolean same = sameWithoutHashing(name, id);
+        if (same == null) {
+            return id.equals(_stats.id(name));
+        }
+        return same;
+    }
+
+    /**
+     * @param name name of a working file.
+     * @param id blob ID, or null.
+     * @return whether the file exists and holds the blob ID, or null if
+     *         that could only be settled by hashing the file.
+     */
+    public Boolean sameWithoutHashing(String name, String id) {
+        File file = new File(name);
+        if (id == null || !file.isFile()) {
+            return false;
+        }
+        String cached = _stats.cached(name);
+        if (cached != null) {
+            return cached.equals(id);
+        }
+        long size = _objects.knownSize(id);
+        if (size >= 0 && size != file.length()) {
+            return false;
+        }
+        File raw = _objects.rawFile(id);
+        if (raw == null) {
+            return null;
+        }
+        if (!mapsEqual(file, raw)) {
+            return false;
+        }
+        _stats.record(name, id);
+        return true;
+    }
+
+    /**
+     * @param file working file.
+     * @param raw RAW object file of the same length plus its tag.
+     * @return whether the contents of FILE equal those of RAW.
+     */
+    private static boolean mapsEqual(File file, File raw) {
+        try (FileChannel a = FileChannel.open(file.toPath(),
+                                              StandardOpenOption.READ);
+             FileChannel b = FileChannel.open(raw.toPath(),
+                                              StandardOpenOption.READ)) {
+            long size = a.size();
+            if (b.size() != size + 1) {
+                return false;
+            }
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                long length = Math.min(MAP_WINDOW, size - pos);
+                MappedByteBuffer x =
+                    a.map(FileChannel.MapMode.READ_ONLY, pos, length);
+                MappedByteBuffer y =
+                    b.map(FileChannel.MapMode.READ_ONLY, pos + 1, length);
+                if (x.mismatch(y) >= 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Binary deltas between two versions of a file. A delta is the size of
+ * the base and of the target, as varints, followed by instructions that
+ * either copy a run of bytes from the base (COPY, offset, length) or
+ * insert literal bytes (INSERT, length, bytes). The encoder indexes the
+ * base by fixed-size blocks and extends every block match as far as it
+ * goes in both directions, so a few edited lines in a large text file
+ * cost a few instructions.
+ * @author Zheyuan Hu
+ */
+public class Delta {
+    /** instruction inserting literal bytes. */
+    private static final int INSERT = 0;
+    /** instruction copying bytes from the base. */
+    private static final int COPY = 1;
+    /** length of the blocks the base is indexed by. */
+    private static final int BLOCK = 16;
+    /** multiplier of the block hash. */
+    private static final int HASH_MULTIPLIER = 31;
+
+    /**
+     * @param base base version.
+     * @param target target version.
+     * @return a delta turning BASE into TARGET.
+     */
+    public static byte[] encode(byte[] base, byte[] target) {
+        HashMap<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CommitCodec.writeVarint(out, base.length);
+        CommitCodec.writeVarint(out, target.length);
+        int literal = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer match = blocks.get(hash(target, i));
+            if (match == null || !Arrays.equals(base, match, match + BLOCK,
+                                                target, i, i + BLOCK)) {
+                i++;
+                continue;
+            }
+            int start = match;
+            int from = i;
+            while (start > 0 && from > literal
+                   && base[start - 1] == target[from - 1]) {
+                start--;
+                from--;
+            }
+            int end = i + BLOCK;
+            int baseEnd = match + BLOCK;
+            while (end < target.length && baseEnd < base.length
+                   && base[baseEnd] == target[end]) {
+                end++;
+                baseEnd++;
+            }
+            insert(out, target, literal, from);
+            out.write(COPY);
+            CommitCodec.writeVarint(out, start);
+            CommitCodec.writeVarint(out, end - from);
+            literal = end;
+            i = end;
+        }
+        insert(out, target, literal, target.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * write an instruction inserting DATA[FROM .. TO), if that is not
+     * empty.
+     * @param out delta being written.
+     * @param data target bytes.
+     * @param from start of the run.
+     * @param to end of the run.
+     */
+    private static void insert(ByteArrayOutputStream out, byte[] data,
+                               int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            CommitCodec.writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /**
+     * @param data bytes.
+     * @param start start of a block.
+     * @return hash of the block of DATA at START.
+     */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * HASH_MULTIPLIER + data[i];
+        }
+        return h;
+    }
+
+    /**
+     * @param delta a delta, starting at OFFSET.
+     * @param offset start of the delta.
+     * @return the size of the version the delta produces.
+     */
+    public static int targetSize(byte[] delta, int offset) {
+        try {
+            ByteArrayInputStream in = new ByteArrayInputStream(delta, offset,
+                delta.length - offset);
+            CommitCodec.readVarint(in);
+            return CommitCodec.readVarint(in);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt delta: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * @param base base version.
+     * @param delta a delta against BASE, starting at OFFSET.
+     * @param offset start of the delta.
+     * @return the version the delta produces.
+     */
+    public static byte[] apply(byte[] base, byte[] delta, int offset) {
+        try {
+            ByteArrayInputStream in = new ByteArrayInputStream(delta, offset,
+                delta.length - offset);
+            if (CommitCodec.readVarint(in) != base.length) {
+                throw Utils.error("Delta does not match its base.");
+            }
+            byte[] result = new byte[CommitCodec.readVarint(in)];
+            int pos = 0;
+            int op = in.read();
+            while (op >= 0) {
+                if (op == COPY) {
+                    int start = CommitCodec.readVarint(in);
+                    int length = CommitCodec.readVarint(in);
+                    System.arraycopy(base, start, result, pos, length);
+                    pos += length;
+                } else {
+                    int length = CommitCodec.readVarint(in);
+                    if (in.read(result, pos, length) != length) {
+                        throw Utils.error("Truncated delta.");
+                    }
+                    pos += length;
+                }
+                op = in.read();
+            }
+            if (pos != result.length) {
+                throw Utils.error("Truncated delta.");
+            }
+            return result;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt delta: %s", excp.getMessage());
+        }
+    }
+}
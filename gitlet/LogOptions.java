@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Options of log and global-log, read from their operands:
+ * <pre>
+ *   -n COUNT        print at most COUNT commits
+ *   --skip COUNT    leave out the first COUNT commits
+ *   --since DATE    leave out commits made before DATE, given as
+ *                   YYYY-MM-DD or YYYY-MM-DDTHH:MM:SS in local time
+ * </pre>
+ * @author Zheyuan Hu
+ */
+public class LogOptions {
+    /** number of commits to leave out. */
+    private int _skip = 0;
+    /** most commits to print. */
+    private int _limit = Integer.MAX_VALUE;
+    /** earliest commit time to print, in seconds since the epoch. */
+    private long _since = Long.MIN_VALUE;
+
+    /**
+     * constructor. Exits with a message if OPERANDS are malformed.
+     * @param operands the command's operands.
+     */
+    public LogOptions(List<String> operands) {
+        try {
+            for (int i = 0; i < operands.size(); i += 2) {
+                String value = operands.get(i + 1);
+                switch (operands.get(i)) {
+                case "-n":
+                    _limit = count(value);
+                    break;
+                case "--skip":
+                    _skip = count(value);
+                    break;
+                case "--since":
+                    _since = parseDate(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException();
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException
+                 | DateTimeParseException excp) {
+            System.out.println("Incorrect operands.");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * @param value operand.
+     * @return VALUE as a count.
+     */
+    private static int count(String value) {
+        int result = Integer.parseInt(value);
+        if (result < 0) {
+            throw new IllegalArgumentException();
+        }
+        return result;
+    }
+
+    /**
+     * @param value a date, with or without a time of day.
+     * @return the start of it in seconds since the epoch.
+     */
+    private static long parseDate(String value) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (value.contains("T")) {
+            return LocalDateTime.parse(value).atZone(zone).toEpochSecond();
+        }
+        return LocalDate.parse(value).atStartOfDay(zone).toEpochSecond();
+    }
+
+    /**
+     * @return number of commits to leave out.
+     */
+    public int getSkip() {
+        return _skip;
+    }
+
+    /**
+     * @return most commits to print.
+     */
+    public int getLimit() {
+        return _limit;
+    }
+
+    /**
+     * @return earliest commit time to print, in seconds since the epoch.
+     */
+    public long getSince() {
+        return _since;
+    }
+}
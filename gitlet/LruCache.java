@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * A least-recently-used cache bounded by the estimated size in bytes of
+ * its values rather than by their number, so a few huge entries cannot
+ * crowd out the heap and many small ones are all kept. Counts hits and
+ * misses so callers can tell whether it is earning its keep. Each entry
+ * keeps the weight it was charged when put, and exactly that is taken off
+ * when it leaves, so values that grow while cached cannot skew the total.
+ * @param <V> type of the cached values.
+ * @author Zheyuan Hu
+ */
+public class LruCache<V> {
+    /** entries, in access order. */
+    private final LinkedHashMap<String, Slot<V>> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** estimates the size of a value in bytes. */
+    private final ToLongFunction<V> _weigher;
+    /** maximum total size in bytes. */
+    private final long _capacity;
+    /** current total size in bytes. */
+    private long _size;
+    /** number of lookups that found their key. */
+    private long _hits;
+    /** number of lookups that did not. */
+    private long _misses;
+
+    /**
+     * A cached value and the weight charged for it.
+     * @param <V> type of the value.
+     */
+    private static class Slot<V> {
+        /** the value. */
+        private final V _value;
+        /** its weight when it was put. */
+        private final long _weight;
+
+        /**
+         * constructor.
+         * @param value the value.
+         * @param weight its weight.
+         */
+        Slot(V value, long weight) {
+            _value = value;
+            _weight = weight;
+        }
+    }
+
+    /**
+     * constructor.
+     * @param capacity maximum total size in bytes.
+     * @param weigher estimates the size of a value in bytes.
+     */
+    public LruCache(long capacity, ToLongFunction<V> weigher) {
+        _capacity = capacity;
+        _weigher = weigher;
+    }
+
+    /**
+     * @param key key.
+     * @return the cached value, or null if absent.
+     */
+    public V get(String key) {
+        Slot<V> slot = _entries.get(key);
+        if (slot == null) {
+            _misses++;
+            return null;
+        }
+        _hits++;
+        return slot._value;
+    }
+
+    /**
+     * cache VALUE under KEY, evicting the least recently used entries until
+     * the cache fits its capacity. Values larger than the whole capacity
+     * are not cached.
+     * @param key key.
+     * @param value value.
+     */
+    public void put(String key, V value) {
+        long weight = _weigher.applyAsLong(value);
+        if (weight > _capacity) {
+            return;
+        }
+        Slot<V> old = _entries.put(key, new Slot<>(value, weight));
+        if (old != null) {
+            _size -= old._weight;
+        }
+        _size += weight;
+        Iterator<Map.Entry<String, Slot<V>>> it =
+            _entries.entrySet().iterator();
+        while (_size > _capacity && it.hasNext()) {
+            _size -= it.next().getValue()._weight;
+            it.remove();
+        }
+    }
+
+    /**
+     * drop KEY from the cache.
+     * @param key key.
+     */
+    public void remove(String key) {
+        Slot<V> old = _entries.remove(key);
+        if (old != null) {
+            _size -= old._weight;
+        }
+    }
+
+    /**
+     * @return number of cached entries.
+     */
+    public int count() {
+        return _entries.size();
+    }
+
+    /**
+     * @return estimated total size of the cached values in bytes.
+     */
+    public long size() {
+        return _size;
+    }
+
+    /**
+     * @return number of lookups that found their key.
+     */
+    public long getHits() {
+        return _hits;
+    }
+
+    /**
+     * @return number of lookups that did not find their key.
+     */
+    public long getMisses() {
+        return _misses;
+    }
+}
@@ -22,9 +22,8 @@ public class Main {
     public static void main(String... args) throws IOException {
         ArrayList<String> operands = new ArrayList<>(Arrays.asList(args));
         cli = new CommandLineTools();
-        cli.refreshUntracked();
         cli.execute(operands);
-        Utils.writeObject(CommandLineTools.CLI_FILE, cli);
+        cli.save();
     }
 
 }
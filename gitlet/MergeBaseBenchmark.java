@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.MergeBaseBenchmark [SIZE...]
+ *  For each SIZE (defaults 10000, 100000 and 1000000) it builds in memory
+ *  a synthetic history of SIZE commits spread over a few long-lived
+ *  branches that merge into one another now and then, picks pairs of
+ *  recent commits on different branches, and prints the mean time per
+ *  merge base for CommitGraph.mergeBase and, for comparison, for a plain
+ *  breadth-first walk that marks every ancestor of one tip before
+ *  searching from the other. Both are first run untimed on every pair,
+ *  which checks the bases found and warms up the JIT. The last columns
+ *  count the pairs with more than one latest common ancestor, and those
+ *  where the nearest common ancestor found breadth first is not a latest
+ *  one (it is reached by a short path, but it is also an ancestor of
+ *  another common ancestor).
+ *  @author Zheyuan Hu
+ */
+public class MergeBaseBenchmark {
+    /** default history sizes. */
+    private static final int[] DEFAULT_SIZES = {10000, 100000, 1000000};
+    /** number of branches in the synthetic history. */
+    private static final int BRANCHES = 8;
+    /** one commit in this many is a merge from another branch. */
+    private static final int MERGE_EVERY = 20;
+    /** how far from the tips the measured pairs are chosen. */
+    private static final int RECENT = 100;
+    /** number of pairs measured per size. */
+    private static final int PAIRS = 200;
+    /** nanoseconds per microsecond. */
+    private static final double NANOS_PER_MICRO = 1e3;
+
+    /** Run the benchmark for the history sizes in ARGS. */
+    public static void main(String... args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%9s %14s %14s %9s %9s%n", "commits", "graph us",
+                          "bfs us", "several", "bfs stale");
+        for (int size : sizes) {
+            Random random = new Random(size);
+            CommitGraph graph = synthetic(size, random);
+            int[] a = new int[PAIRS];
+            int[] b = new int[PAIRS];
+            for (int i = 0; i < PAIRS; i++) {
+                a[i] = size - 1 - random.nextInt(RECENT);
+                b[i] = size - 1 - random.nextInt(RECENT);
+            }
+            int several = 0;
+            int stale = 0;
+            for (int i = 0; i < PAIRS; i++) {
+                List<Integer> bases = graph.mergeBases(a[i], b[i]);
+                BitSet common = graph.ancestors(a[i]);
+                common.and(graph.ancestors(b[i]));
+                int nearest = breadthFirst(graph, a[i], b[i]);
+                for (int base : bases) {
+                    if (!common.get(base)) {
+                        throw Utils.error("%d is not a common ancestor.",
+                                          base);
+                    }
+                }
+                if (!bases.contains(nearest)) {
+                    stale++;
+                }
+                if (bases.size() > 1) {
+                    several++;
+                }
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < PAIRS; i++) {
+                graph.mergeBase(a[i], b[i]);
+            }
+            long walked = System.nanoTime();
+            for (int i = 0; i < PAIRS; i++) {
+                breadthFirst(graph, a[i], b[i]);
+            }
+            long done = System.nanoTime();
+            System.out.printf("%9d %14.1f %14.1f %9d %9d%n", size,
+                              (walked - start) / NANOS_PER_MICRO / PAIRS,
+                              (done - walked) / NANOS_PER_MICRO / PAIRS,
+                              several, stale);
+        }
+    }
+
+    /**
+     * @param size number of commits.
+     * @param random source of choices.
+     * @return a history of SIZE commits over BRANCHES branches. Commit
+     *         times increase with position.
+     */
+    private static CommitGraph synthetic(int size, Random random) {
+        CommitGraph graph = new CommitGraph();
+        int[] tips = new int[BRANCHES];
+        graph.add(Utils.sha1("0"), CommitGraph.NONE, CommitGraph.NONE, 0);
+        for (int pos = 1; pos < size; pos++) {
+            int branch = random.nextInt(BRANCHES);
+            int merge = CommitGraph.NONE;
+            if (random.nextInt(MERGE_EVERY) == 0) {
+                int other = tips[random.nextInt(BRANCHES)];
+                if (other != tips[branch]) {
+                    merge = other;
+                }
+            }
+            graph.add(Utils.sha1(Integer.toString(pos)), tips[branch], merge,
+                      pos);
+            tips[branch] = pos;
+        }
+        return graph;
+    }
+
+    /**
+     * @param graph a history.
+     * @param a position of a commit.
+     * @param b position of another.
+     * @return the common ancestor of A and B nearest to A, found by
+     *         marking every ancestor of B and walking breadth first from A.
+     */
+    private static int breadthFirst(CommitGraph graph, int a, int b) {
+        BitSet ofB = graph.ancestors(b);
+        BitSet seen = new BitSet(graph.size());
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(a);
+        seen.set(a);
+        while (!queue.isEmpty()) {
+            int p = queue.remove();
+            if (ofB.get(p)) {
+                return p;
+            }
+            for (int q : new int[] {graph.parent(p), graph.mergeParent(p)}) {
+                if (q != CommitGraph.NONE && !seen.get(q)) {
+                    seen.set(q);
+                    queue.add(q);
+                }
+            }
+        }
+        return CommitGraph.NONE;
+    }
+}
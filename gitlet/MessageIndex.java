@@ -0,0 +1,429 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * An index of commit messages, so that find need not read any commit.
+ * .gitlet/messages holds one record per commit, appended as commits are
+ * made: the raw commit ID, the message's length and the message in UTF-8.
+ * The inverted index maps the hash of each message, and of each distinct
+ * word of it, to the offsets of the records it occurs in. Like the
+ * CommitIndex it is a sorted base file, message-index, which is binary
+ * searched, plus a journal of recent entries, message-index.log, folded
+ * into the base once it grows past a threshold. Hashes may collide, so
+ * every record found is checked against the query. Substring and regex
+ * queries scan the records file instead, in parallel. The base starts
+ * with a header holding the number of records it covers, so the count
+ * of records is known without reading the records file. A base without
+ * that header is rebuilt from the records file.
+ * @author Zheyuan Hu
+ */
+public class MessageIndex {
+    /** length of an index entry: hash and record offset. */
+    static final int ENTRY = Long.BYTES + Integer.BYTES;
+    /** leading bytes of the base file. */
+    private static final byte[] MAGIC = {'G', 'M', 'I', 1};
+    /** length of the base file's header: magic and record count. */
+    private static final int HEADER = MAGIC.length + Integer.BYTES;
+    /** length of a record's ID and message length. */
+    private static final int RECORD_HEADER =
+        CommitIndex.RAW_LENGTH + Integer.BYTES;
+    /** journal length, in entries, past which it is merged into the base. */
+    private static final int MERGE_THRESHOLD = 4096;
+    /** number of hex digits of a SHA-1 taken as an entry's hash. */
+    private static final int HASH_DIGITS = 16;
+    /** hexadecimal radix. */
+    private static final int HEX = 16;
+    /** initial capacity of the list of record offsets. */
+    private static final int INITIAL_RECORDS = 64;
+    /** the records file. */
+    private final File _recordFile;
+    /** sorted base file. */
+    private final File _baseFile;
+    /** journal of recent additions. */
+    private final File _journalFile;
+    /** entries of the base file. */
+    private byte[] _base;
+    /** number of records the base covers. */
+    private int _baseCount;
+    /** number of records the journal covers. */
+    private int _journalCount;
+    /** contents of the journal file. */
+    private byte[] _journal;
+    /** the records file mapped, or null until a query needs it. */
+    private ByteBuffer _records;
+
+    /**
+     * constructor. Loads the index kept in REPODIR, if any, dropping it if
+     * the records it points into are gone and rebuilding it if its base
+     * is not in the current format.
+     * @param repoDir gitlet directory.
+     */
+    public MessageIndex(File repoDir) {
+        _recordFile = Utils.join(repoDir, "messages");
+        _baseFile = Utils.join(repoDir, "message-index");
+        _journalFile = Utils.join(repoDir, "message-index.log");
+        if (!_recordFile.isFile()) {
+            _baseFile.delete();
+            _journalFile.delete();
+        }
+        byte[] base = readIfExists(_baseFile);
+        if (base.length == 0) {
+            _base = base;
+        } else if (base.length % ENTRY == HEADER && Arrays.equals(base, 0,
+                MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            _baseCount = ByteBuffer.wrap(base).getInt(MAGIC.length);
+            _base = Arrays.copyOfRange(base, HEADER, base.length);
+        } else {
+            rebuild();
+            return;
+        }
+        _journal = readIfExists(_journalFile);
+        ByteBuffer journal = ByteBuffer.wrap(_journal);
+        for (int at = 0; at < _journal.length; at += ENTRY) {
+            if (at == 0 || journal.getInt(at + Long.BYTES)
+                    != journal.getInt(at - Integer.BYTES)) {
+                _journalCount++;
+            }
+        }
+    }
+
+    /**
+     * @param file file.
+     * @return contents of FILE, or an empty array if it does not exist.
+     */
+    private static byte[] readIfExists(File file) {
+        if (!file.isFile()) {
+            return new byte[0];
+        }
+        return Utils.readContents(file);
+    }
+
+    /**
+     * @param message a commit message.
+     * @return its distinct words, lower-cased.
+     */
+    static Set<String> words(String message) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String word
+                 : message.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param kind 'm' for a whole message, 'w' for a word.
+     * @param text the message or word.
+     * @return the hash it is indexed under.
+     */
+    private static long hash(char kind, String text) {
+        return Long.parseUnsignedLong(
+            Utils.sha1(String.valueOf(kind), text).substring(0, HASH_DIGITS),
+            HEX);
+    }
+
+    /**
+     * record the message of a new commit.
+     * @param id full commit ID.
+     * @param message its message.
+     */
+    public void add(String id, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int offset = (int) _recordFile.length();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + text.length);
+        record.put(Utils.hexToBytes(id)).putInt(text.length).put(text);
+        byte[] entries = entries(message, offset);
+        append(_recordFile, record.array());
+        append(_journalFile, entries);
+        byte[] journal = Arrays.copyOf(_journal,
+            _journal.length + entries.length);
+        System.arraycopy(entries, 0, journal, _journal.length,
+            entries.length);
+        _journal = journal;
+        _journalCount++;
+        _records = null;
+        if (_journal.length / ENTRY > MERGE_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * @param message a commit message.
+     * @param offset offset of its record.
+     * @return the index entries of the record: one for the whole message
+     *         and one for each distinct word.
+     */
+    private static byte[] entries(String message, int offset) {
+        Set<String> words = words(message);
+        ByteBuffer entries = ByteBuffer.allocate((words.size() + 1) * ENTRY);
+        entries.putLong(hash('m', message)).putInt(offset);
+        for (String word : words) {
+            entries.putLong(hash('w', word)).putInt(offset);
+        }
+        return entries.array();
+    }
+
+    /**
+     * index every record afresh and write the result as the base.
+     */
+    private void rebuild() {
+        int[] offsets = offsets();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        for (int offset : offsets) {
+            entries.writeBytes(entries(messageAt(offset), offset));
+        }
+        _base = new byte[0];
+        _baseCount = 0;
+        _journal = entries.toByteArray();
+        _journalCount = offsets.length;
+        compact();
+    }
+
+    /**
+     * append DATA to FILE.
+     * @param file file.
+     * @param data bytes.
+     */
+    private static void append(File file, byte[] data) {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(data);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot update message index: %s",
+                excp.getMessage());
+        }
+    }
+
+    /**
+     * merge the journal into the sorted base and rewrite both files.
+     */
+    public void compact() {
+        int n = (_base.length + _journal.length) / ENTRY;
+        ByteBuffer all = ByteBuffer.allocate(n * ENTRY);
+        all.put(_base).put(_journal).flip();
+        long[] hashes = new long[n];
+        int[] offsets = new int[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = all.getLong();
+            offsets[i] = all.getInt();
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(hashes[a], hashes[b]);
+            return c != 0 ? c : Integer.compare(offsets[a], offsets[b]);
+        });
+        _baseCount += _journalCount;
+        ByteBuffer base = ByteBuffer.allocate(HEADER + n * ENTRY);
+        base.put(MAGIC).putInt(_baseCount);
+        for (int i : order) {
+            base.putLong(hashes[i]).putInt(offsets[i]);
+        }
+        _base = Arrays.copyOfRange(base.array(), HEADER, base.capacity());
+        _journal = new byte[0];
+        _journalCount = 0;
+        File temp = Utils.join(_baseFile.getParentFile(), "message-index.tmp");
+        Utils.writeContents(temp, base.array());
+        if (!temp.renameTo(_baseFile)) {
+            Utils.writeContents(_baseFile, base.array());
+            temp.delete();
+        }
+        _journalFile.delete();
+    }
+
+    /**
+     * @return the records file, mapped read-only.
+     */
+    private ByteBuffer records() {
+        if (_records == null) {
+            if (!_recordFile.isFile()) {
+                _records = ByteBuffer.allocate(0);
+                return _records;
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(_recordFile, "r");
+                 FileChannel channel = raf.getChannel()) {
+                _records = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                       channel.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return _records;
+    }
+
+    /**
+     * @return the offset of every record, in the order they were added.
+     */
+    private int[] offsets() {
+        ByteBuffer records = records();
+        int[] result = new int[INITIAL_RECORDS];
+        int n = 0;
+        int at = 0;
+        while (at < records.limit()) {
+            if (n == result.length) {
+                result = Arrays.copyOf(result, n * 2);
+            }
+            result[n] = at;
+            n++;
+            at += RECORD_HEADER + records.getInt(at + CommitIndex.RAW_LENGTH);
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * @return number of records, from the base's header and the journal,
+     *         without reading the records file.
+     */
+    public int size() {
+        return _baseCount + _journalCount;
+    }
+
+    /**
+     * @param offset offset of a record.
+     * @return the commit ID of the record.
+     */
+    private String idAt(int offset) {
+        ByteBuffer record = records().duplicate();
+        record.position(offset);
+        byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+        record.get(raw);
+        return Utils.bytesToHex(raw);
+    }
+
+    /**
+     * @param offset offset of a record.
+     * @return the message of the record.
+     */
+    private String messageAt(int offset) {
+        ByteBuffer record = records().duplicate();
+        record.position(offset + CommitIndex.RAW_LENGTH);
+        byte[] text = new byte[record.getInt()];
+        record.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return IDs of the commits recorded, which may repeat.
+     */
+    public List<String> ids() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int offset : offsets()) {
+            result.add(idAt(offset));
+        }
+        return result;
+    }
+
+    /**
+     * @param hash hash of a message or word.
+     * @return offsets of the records indexed under HASH.
+     */
+    private List<Integer> lookup(long hash) {
+        ArrayList<Integer> result = new ArrayList<>();
+        ByteBuffer base = ByteBuffer.wrap(_base);
+        int lo = 0;
+        int hi = _base.length / ENTRY;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Long.compareUnsigned(base.getLong(mid * ENTRY), hash) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < _base.length / ENTRY
+                 && base.getLong(i * ENTRY) == hash; i++) {
+            result.add(base.getInt(i * ENTRY + Long.BYTES));
+        }
+        ByteBuffer journal = ByteBuffer.wrap(_journal);
+        for (int at = 0; at < _journal.length; at += ENTRY) {
+            if (journal.getLong(at) == hash) {
+                result.add(journal.getInt(at + Long.BYTES));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param offsets offsets of records.
+     * @param test test on a record's message.
+     * @return the sorted IDs of the records at OFFSETS passing TEST.
+     */
+    private List<String> select(List<Integer> offsets,
+                                Predicate<String> test) {
+        TreeSet<String> result = new TreeSet<>();
+        for (int offset : offsets) {
+            if (test.test(messageAt(offset))) {
+                result.add(idAt(offset));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * @param message a commit message.
+     * @return sorted IDs of the commits with exactly MESSAGE.
+     */
+    public List<String> withMessage(String message) {
+        return select(lookup(hash('m', message)), message::equals);
+    }
+
+    /**
+     * @param text one or more words.
+     * @return sorted IDs of the commits whose messages hold every word of
+     *         TEXT, ignoring case.
+     */
+    public List<String> withWords(String text) {
+        Set<String> wanted = words(text);
+        if (wanted.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return select(lookup(hash('w', wanted.iterator().next())),
+            m -> words(m).containsAll(wanted));
+    }
+
+    /**
+     * scan every record, in parallel.
+     * @param test test on a message.
+     * @return sorted IDs of the commits whose messages pass TEST.
+     */
+    public List<String> scan(Predicate<String> test) {
+        int[] offsets = offsets();
+        String[] found = Arrays.stream(offsets).parallel()
+            .filter(offset -> test.test(messageAt(offset)))
+            .mapToObj(this::idAt).distinct().sorted()
+            .toArray(String[]::new);
+        return new ArrayList<>(Arrays.asList(found));
+    }
+
+    /**
+     * @param ids commit IDs.
+     * @return those of IDS that have no record.
+     */
+    public List<String> missing(List<String> ids) {
+        HashSet<String> recorded = new HashSet<>(ids());
+        ArrayList<String> result = new ArrayList<>();
+        for (String id : ids) {
+            if (!recorded.contains(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+}
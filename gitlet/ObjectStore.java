@@ -0,0 +1,607 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Content-addressed store of file contents. Each blob's bytes are written
+ * once, under its SHA-1 ID, and shared by every commit that refers to it.
+ * Objects live in a two-character fan-out so no single directory grows
+ * with the size of the history. Objects rolled into packs by gc are
+ * served from the packs.
+ * Every object file, loose blob or loose commit, starts with a tag byte:
+ * RAW for bytes stored as they are, SIZED for the size of the bytes
+ * followed by a zlib stream of them, which is inflated as it is read. A
+ * deflated object's size is then known without inflating it. Files
+ * tagged DEFLATED, a zlib stream alone, were written before objects
+ * recorded their size and are still read. A file of at least the big-file threshold is
+ * instead split into content-defined chunks, each stored once under its
+ * own SHA-1 in a separate chunk directory, and its object file, tagged
+ * CHUNKED, lists them; versions of a large file then share every chunk
+ * an edit did not touch.
+ * @author Zheyuan Hu
+ */
+public class ObjectStore {
+    /** length of the fan-out directory name. */
+    private static final int FANOUT = 2;
+    /** tag of an object file holding its bytes as they are. */
+    static final int RAW = 'r';
+    /** tag of an object file holding its bytes deflated, without their
+     *  size. */
+    static final int DEFLATED = 'z';
+    /** tag of an object file holding the size of its bytes, then the
+     *  bytes deflated. */
+    static final int SIZED = 'Z';
+    /** tag of an object file listing the chunks its bytes are split into. */
+    static final int CHUNKED = 'c';
+    /** size of the buffers used to stream object files. */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** root directory of the store. */
+    private final File _dir;
+    /** packs of the repo. */
+    private final Packs _packs;
+    /** zlib level for new objects; 0 stores them as they are. */
+    private final int _level;
+    /** root directory of the chunks of large files, or null. */
+    private final File _chunkDir;
+    /** size from which a working file is stored in chunks. */
+    private final long _bigFileThreshold;
+
+    /**
+     * constructor for a store that keeps every object whole.
+     * @param dir root directory of the store.
+     * @param packs packs of the repo.
+     * @param level zlib level for new objects.
+     */
+    public ObjectStore(File dir, Packs packs, int level) {
+        this(dir, packs, level, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * constructor.
+     * @param dir root directory of the store.
+     * @param packs packs of the repo.
+     * @param level zlib level for new objects.
+     * @param chunkDir root directory of the chunks of large files.
+     * @param bigFileThreshold size from which files are chunked.
+     */
+    public ObjectStore(File dir, Packs packs, int level, File chunkDir,
+                       long bigFileThreshold) {
+        _dir = dir;
+        _packs = packs;
+        _level = level;
+        _chunkDir = chunkDir;
+        _bigFileThreshold = bigFileThreshold;
+    }
+
+    /**
+     * write DATA to the object file FILE, deflating it unless LEVEL is 0.
+     * @param file object file.
+     * @param data bytes.
+     * @param level zlib level.
+     */
+    static void writeFile(File file, byte[] data, int level) {
+        writeFile(file, new ByteArrayInputStream(data), level);
+    }
+
+    /**
+     * write what remains of IN to the object file FILE, a buffer at a
+     * time, deflating it unless LEVEL is 0. The size of a deflated object
+     * is filled in once all of IN has been read.
+     * @param file object file.
+     * @param in stream of the object's bytes.
+     * @param level zlib level.
+     */
+    static void writeFile(File file, InputStream in, int level) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            if (level == 0) {
+                out.write(RAW);
+                in.transferTo(out);
+                return;
+            }
+            out.write(SIZED);
+            out.write(new byte[Long.BYTES]);
+            Deflater deflater = new Deflater(level);
+            long size;
+            try {
+                DeflaterOutputStream z =
+                    new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+                size = in.transferTo(z);
+                z.finish();
+            } finally {
+                deflater.end();
+            }
+            out.getChannel().write(
+                ByteBuffer.allocate(Long.BYTES).putLong(0, size), 1);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param file object file.
+     * @return a stream of the object's bytes, inflated as they are read.
+     */
+    static InputStream openFile(File file) {
+        try {
+            return untag(new FileInputStream(file), file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * open an object file without first checking that it is there, for
+     * callers that fall back to the packs when it is not.
+     * @param file object file.
+     * @return a stream of the object's bytes, or null if FILE is missing.
+     */
+    static InputStream openIfExists(File file) {
+        FileInputStream in;
+        try {
+            in = new FileInputStream(file);
+        } catch (FileNotFoundException excp) {
+            return null;
+        }
+        try {
+            return untag(in, file);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param in stream positioned at the tag byte of an object file.
+     * @param file the file, for messages.
+     * @return a stream of the object's bytes, inflated as they are read.
+     * @throws IOException if IN cannot be read.
+     */
+    private static InputStream untag(InputStream in, File file)
+        throws IOException {
+        int tag = in.read();
+        if (tag == SIZED) {
+            in.readNBytes(Long.BYTES);
+        }
+        if (tag == SIZED || tag == DEFLATED) {
+            return new InflaterInputStream(
+                new BufferedInputStream(in, BUFFER_SIZE));
+        } else if (tag == RAW) {
+            return new BufferedInputStream(in, BUFFER_SIZE);
+        }
+        in.close();
+        throw Utils.error("Bad object file %s.", file);
+    }
+
+    /**
+     * @param file object file.
+     * @return the object's bytes.
+     */
+    static byte[] readFile(File file) {
+        try (InputStream in = openFile(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id blob ID.
+     * @return the file holding the object with the given ID.
+     */
+    public File path(String id) {
+        return Utils.join(_dir, id.substring(0, FANOUT), id.substring(FANOUT));
+    }
+
+    /**
+     * @param id blob ID.
+     * @return whether the object is already stored.
+     */
+    public boolean contains(String id) {
+        return path(id).isFile() || _packs.contains(id);
+    }
+
+    /**
+     * store CONTENTS under ID unless an object with that ID already exists.
+     * @param id blob ID.
+     * @param contents file contents.
+     */
+    public void put(String id, byte[] contents) {
+        File file = path(id);
+        if (contains(id)) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        writeFile(file, contents, _level);
+    }
+
+    /**
+     * store the contents of the working file SOURCE under ID, streaming
+     * them, unless an object with that ID already exists.
+     * @param id blob ID.
+     * @param source working file.
+     */
+    public void putFile(String id, File source) {
+        File file = path(id);
+        if (contains(id)) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        if (_level == 0 && source.length() < _bigFileThreshold) {
+            copyRaw(source, file);
+            return;
+        }
+        try (InputStream in = new FileInputStream(source)) {
+            if (source.length() >= _bigFileThreshold) {
+                putChunks(file, in);
+            } else {
+                writeFile(file, in, _level);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * write SOURCE to the object file FILE as a RAW object, letting the
+     * kernel move the bytes between the files.
+     * @param source working file.
+     * @param file object file.
+     */
+    private static void copyRaw(File source, File file) {
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                                               StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(new byte[] {RAW}));
+            long size = in.size();
+            for (long pos = 0; pos < size;) {
+                pos += in.transferTo(pos, size - pos, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * store the working file NAME in a single read: its contents are
+     * hashed as they are written to a temporary object file, which is then
+     * renamed to the blob ID, or dropped if that object is already stored.
+     * @param name working file name.
+     * @return the file's blob ID.
+     */
+    public String putWorking(String name) {
+        File source = new File(name);
+        MessageDigest md = Blob.newDigest(name);
+        File temp;
+        try {
+            _dir.mkdirs();
+            temp = File.createTempFile("incoming", ".tmp", _dir);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try (InputStream in = new DigestInputStream(
+                 new FileInputStream(source), md)) {
+            if (source.length() >= _bigFileThreshold) {
+                putChunks(temp, in);
+            } else {
+                writeFile(temp, in, _level);
+            }
+            String id = Utils.bytesToHex(md.digest());
+            if (!contains(id)) {
+                File file = path(id);
+                file.getParentFile().mkdirs();
+                Files.move(temp.toPath(), file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE);
+            }
+            return id;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * split IN into content-defined chunks, store each chunk not already
+     * stored under the SHA-1 of its bytes, and write to FILE the list of
+     * chunks: CHUNKED, the total size, the chunk count and each chunk's
+     * raw ID and length.
+     * @param file object file.
+     * @param in stream of the object's bytes.
+     * @throws IOException if IN cannot be read.
+     */
+    private void putChunks(File file, InputStream in) throws IOException {
+        ByteArrayOutputStream list = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(list);
+        Chunker chunker = new Chunker(in);
+        long total = 0;
+        int count = 0;
+        for (byte[] chunk = chunker.next(); chunk != null;
+             chunk = chunker.next()) {
+            String chunkID = Utils.sha1(chunk);
+            File chunkFile = chunkPath(chunkID);
+            if (!chunkFile.isFile()) {
+                chunkFile.getParentFile().mkdirs();
+                writeFile(chunkFile, chunk, _level);
+            }
+            entries.write(Utils.hexToBytes(chunkID));
+            entries.writeInt(chunk.length);
+            total += chunk.length;
+            count++;
+        }
+        try (DataOutputStream out =
+                 new DataOutputStream(new FileOutputStream(file))) {
+            out.write(CHUNKED);
+            out.writeLong(total);
+            out.writeInt(count);
+            list.writeTo(out);
+        }
+    }
+
+    /**
+     * @param id chunk ID.
+     * @return the file holding the chunk with the given ID.
+     */
+    private File chunkPath(String id) {
+        if (_chunkDir == null) {
+            throw Utils.error("Chunked objects are not kept in %s.", _dir);
+        }
+        return Utils.join(_chunkDir, id.substring(0, FANOUT),
+                          id.substring(FANOUT));
+    }
+
+    /**
+     * @param id object ID.
+     * @return whether the object is stored loose in chunks.
+     */
+    public boolean isChunked(String id) {
+        try (InputStream in = new FileInputStream(path(id))) {
+            return in.read() == CHUNKED;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /**
+     * @param file a chunked object file.
+     * @return IDs of its chunks, in order.
+     */
+    private List<String> chunkIDs(File file) {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file)))) {
+            in.readUnsignedByte();
+            in.readLong();
+            int count = in.readInt();
+            ArrayList<String> ids = new ArrayList<>(count);
+            byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                ids.add(Utils.bytesToHex(raw));
+                in.readInt();
+            }
+            return ids;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param file a loose object file.
+     * @return a stream of the object's bytes: inflated as they are read,
+     *         or for a chunked object, its chunks one after another, each
+     *         opened only once the one before is used up.
+     * @throws IOException if FILE cannot be read.
+     */
+    private InputStream openLoose(File file) throws IOException {
+        PushbackInputStream in =
+            new PushbackInputStream(new FileInputStream(file));
+        int tag = in.read();
+        if (tag != CHUNKED) {
+            in.unread(tag);
+            return untag(in, file);
+        }
+        in.close();
+        Iterator<String> chunks = chunkIDs(file).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return openFile(chunkPath(chunks.next()));
+            }
+        });
+    }
+
+    /**
+     * @param id blob ID.
+     * @return contents of the object.
+     */
+    public byte[] get(String id) {
+        File file = path(id);
+        if (file.isFile()) {
+            try (InputStream in = openLoose(file)) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        byte[] packed = _packs.get(id);
+        if (packed == null) {
+            throw Utils.error("Missing object %s.", id);
+        }
+        return packed;
+    }
+
+    /**
+     * @param id blob ID.
+     * @return size of the object's contents in bytes.
+     */
+    public long size(String id) {
+        long known = knownSize(id);
+        if (known >= 0) {
+            return known;
+        }
+        try (InputStream in = openFile(path(id))) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id blob ID.
+     * @return size of the object's contents if it is known without
+     *         reading them, from the length of a RAW object file, the
+     *         header of a SIZED one, a chunk list or a pack; -1 for a
+     *         loose object deflated without its size.
+     */
+    public long knownSize(String id) {
+        File file = path(id);
+        try (DataInputStream in =
+                 new DataInputStream(new FileInputStream(file))) {
+            int tag = in.read();
+            if (tag == RAW) {
+                return file.length() - 1;
+            } else if (tag == SIZED || tag == CHUNKED) {
+                return in.readLong();
+            }
+            return -1;
+        } catch (FileNotFoundException excp) {
+            return _packs.size(id);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id blob ID.
+     * @return the object file if the object is stored loose and RAW, so
+     *         its contents may be mapped from the byte after the tag, or
+     *         null.
+     */
+    public File rawFile(String id) {
+        File file = path(id);
+        try (InputStream in = new FileInputStream(file)) {
+            return in.read() == RAW ? file : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * write the contents of an object to DEST, streaming and inflating
+     * loose objects, chunk by chunk for chunked ones, rather than holding
+     * them in memory.
+     * @param id blob ID.
+     * @param dest destination file.
+     * @return number of bytes written.
+     */
+    public long writeTo(String id, File dest) {
+        File file = path(id);
+        if (!file.isFile()) {
+            byte[] contents = get(id);
+            Utils.writeContents(dest, contents);
+            return contents.length;
+        }
+        try (InputStream in = openLoose(file)) {
+            return Files.copy(in, dest.toPath(),
+                              StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id blob ID.
+     * @return contents of the object as a string.
+     */
+    public String getString(String id) {
+        return new String(get(id), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return IDs of the objects stored as loose files.
+     */
+    public List<String> looseIDs() {
+        ArrayList<String> ids = new ArrayList<>();
+        File[] fanout = _dir.listFiles();
+        if (fanout == null) {
+            return ids;
+        }
+        for (File dir : fanout) {
+            String[] names = dir.list();
+            if (names != null) {
+                for (String name : names) {
+                    ids.add(dir.getName() + name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * delete the loose copy of an object once it has been packed. The
+     * chunks of a chunked object are never packed, and stay.
+     * @param id blob ID.
+     */
+    public void deleteLoose(String id) {
+        File file = path(id);
+        file.delete();
+        file.getParentFile().delete();
+    }
+
+    /**
+     * copy the object with the given ID into another store.
+     * @param id blob ID.
+     * @param other destination store.
+     */
+    public void copyTo(String id, ObjectStore other) {
+        if (other.contains(id)) {
+            return;
+        } else if (!isChunked(id)) {
+            other.put(id, get(id));
+            return;
+        }
+        for (String chunkID : chunkIDs(path(id))) {
+            File dest = other.chunkPath(chunkID);
+            if (!dest.isFile()) {
+                dest.getParentFile().mkdirs();
+                writeFile(dest, readFile(chunkPath(chunkID)), other._level);
+            }
+        }
+        File dest = other.path(id);
+        dest.getParentFile().mkdirs();
+        Utils.writeContents(dest, Utils.readContents(path(id)));
+    }
+}
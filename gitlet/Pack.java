@@ -0,0 +1,214 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A read-only pack of commits, trees and blobs. The pack file holds the objects
+ * back to back, each as a type byte, the object's length and its stored
+ * length as varints, and the stored bytes, deflated if the type byte has
+ * the DEFLATED bit set. Its index file, named like the pack with an
+ * ".idx" suffix, holds the raw IDs of the objects in sorted order
+ * followed by each object's offset in the pack. Blobs may be stored as
+ * deltas against another version of the same file. Both files are
+ * memory-mapped, so finding an object is a binary search over the mapped
+ * index and reading it copies only the object's own bytes.
+ * @author Zheyuan Hu
+ */
+public class Pack {
+    /** object type of a commit. */
+    static final int COMMIT = 1;
+    /** object type of a blob. */
+    static final int BLOB = 2;
+    /** object type of a blob stored as the raw ID of its base object
+     *  followed by a Delta against the base. */
+    static final int DELTA = 3;
+    /** object type of a tree. */
+    static final int TREE = 4;
+    /** bit of the type byte marking a deflated object. */
+    static final int DEFLATED = 0x80;
+    /** leading bytes of a pack file. */
+    static final byte[] PACK_MAGIC = {'G', 'L', 'P', 'K'};
+    /** leading bytes of an index file. */
+    static final byte[] INDEX_MAGIC = {'G', 'L', 'P', 'I'};
+    /** current format version of both files. */
+    static final int VERSION = 2;
+    /** length of the index header: magic, version and object count. */
+    static final int INDEX_HEADER = INDEX_MAGIC.length + 1 + Integer.BYTES;
+    /** the pack file. */
+    private final File _file;
+    /** mapped pack file. */
+    private final MappedByteBuffer _data;
+    /** mapped index file. */
+    private final MappedByteBuffer _index;
+    /** number of objects. */
+    private final int _count;
+
+    /**
+     * constructor. Maps the pack file FILE and its index.
+     * @param file pack file.
+     */
+    public Pack(File file) {
+        _file = file;
+        _data = map(file);
+        _index = map(indexFile(file));
+        byte[] magic = new byte[INDEX_MAGIC.length];
+        _index.get(magic);
+        ByteBuffer pack = _data.duplicate();
+        byte[] packMagic = new byte[PACK_MAGIC.length];
+        pack.get(packMagic);
+        if (!Arrays.equals(packMagic, PACK_MAGIC)
+            || (pack.get() & 0xff) != VERSION) {
+            throw Utils.error("Bad pack %s.", file);
+        }
+        if (!Arrays.equals(magic, INDEX_MAGIC)
+            || (_index.get() & 0xff) != VERSION) {
+            throw Utils.error("Bad pack index %s.", indexFile(file));
+        }
+        _count = _index.getInt();
+    }
+
+    /**
+     * @param file a pack file.
+     * @return the index file belonging to it.
+     */
+    static File indexFile(File file) {
+        String name = file.getName();
+        return new File(file.getParentFile(),
+            name.substring(0, name.lastIndexOf('.')) + ".idx");
+    }
+
+    /**
+     * @param file file.
+     * @return FILE mapped read-only.
+     */
+    private static MappedByteBuffer map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @return the pack file.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * @return number of objects in the pack.
+     */
+    public int count() {
+        return _count;
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @return ID of the object at POS.
+     */
+    public String idAt(int pos) {
+        return Utils.bytesToHex(rawID(pos, new byte[CommitIndex.RAW_LENGTH]));
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @param raw buffer for the ID.
+     * @return RAW, filled with the raw ID of the object at POS.
+     */
+    private byte[] rawID(int pos, byte[] raw) {
+        ByteBuffer index = _index.duplicate();
+        index.position(INDEX_HEADER + pos * CommitIndex.RAW_LENGTH);
+        index.get(raw);
+        return raw;
+    }
+
+    /**
+     * @param id full object ID.
+     * @return position of ID in the sorted index, or -1 if absent.
+     */
+    public int find(String id) {
+        byte[] target = Utils.hexToBytes(id);
+        byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+        int lo = 0;
+        int hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(rawID(mid, raw), target);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @return offset in the pack of the object at POS.
+     */
+    private int offset(int pos) {
+        int base = INDEX_HEADER + _count * CommitIndex.RAW_LENGTH;
+        return (int) _index.getLong(base + pos * Long.BYTES);
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @return type of the object at POS.
+     */
+    public int type(int pos) {
+        return _data.get(offset(pos)) & ~DEFLATED & 0xff;
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @return size in bytes of the object at POS.
+     */
+    public int size(int pos) {
+        ByteBuffer entry = _data.duplicate();
+        entry.position(offset(pos) + 1);
+        return CommitCodec.readVarint(entry);
+    }
+
+    /**
+     * @param pos position in the sorted index.
+     * @return the bytes of the object at POS.
+     */
+    public byte[] read(int pos) {
+        ByteBuffer entry = _data.duplicate();
+        entry.position(offset(pos));
+        boolean deflated = (entry.get() & DEFLATED) != 0;
+        byte[] result = new byte[CommitCodec.readVarint(entry)];
+        int stored = CommitCodec.readVarint(entry);
+        if (!deflated) {
+            entry.get(result);
+            return result;
+        }
+        entry.limit(entry.position() + stored);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(entry.slice());
+            if (inflater.inflate(result) != result.length) {
+                throw Utils.error("Truncated object in %s.", _file);
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw Utils.error("Corrupt object in %s.", _file);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a pack file and its index. Objects are deflated and streamed to
+ * a temporary file as they are added; finish sorts their IDs, writes the
+ * index and renames both files after the SHA-1 of the sorted IDs.
+ * @author Zheyuan Hu
+ */
+public class PackWriter {
+    /** size past which a pack should be finished and a new one begun, so
+     *  every offset stays mappable. */
+    static final long MAX_PACK_BYTES = 1L << 30;
+    /** directory of packs. */
+    private final File _dir;
+    /** temporary pack file. */
+    private final File _temp;
+    /** stream to the temporary pack file. */
+    private final DataOutputStream _out;
+    /** IDs of the objects written, in order. */
+    private final ArrayList<String> _ids = new ArrayList<>();
+    /** offsets of the objects written, in order. */
+    private final ArrayList<Long> _offsets = new ArrayList<>();
+    /** deflater for the objects, or null to store them as they are. */
+    private final Deflater _deflater;
+
+    /**
+     * constructor.
+     * @param dir directory of packs.
+     * @param level zlib level for the objects; 0 stores them as they are.
+     */
+    public PackWriter(File dir, int level) {
+        _dir = dir;
+        if (level == 0) {
+            _deflater = null;
+        } else {
+            _deflater = new Deflater(level);
+        }
+        _dir.mkdirs();
+        _temp = Utils.join(dir, "pack.tmp");
+        try {
+            _out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(_temp)));
+            _out.write(Pack.PACK_MAGIC);
+            _out.write(Pack.VERSION);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * append an object to the pack.
+     * @param id object ID.
+     * @param type object type.
+     * @param data object bytes.
+     */
+    public void add(String id, int type, byte[] data) {
+        try {
+            _ids.add(id);
+            _offsets.add((long) _out.size());
+            byte[] stored = data;
+            int tag = type;
+            if (_deflater != null) {
+                stored = deflate(data);
+                tag |= Pack.DEFLATED;
+            }
+            _out.write(tag);
+            ByteArrayOutputStream lengths = new ByteArrayOutputStream();
+            CommitCodec.writeVarint(lengths, data.length);
+            CommitCodec.writeVarint(lengths, stored.length);
+            lengths.writeTo(_out);
+            _out.write(stored);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param data bytes.
+     * @return DATA deflated.
+     */
+    private byte[] deflate(byte[] data) {
+        _deflater.reset();
+        _deflater.setInput(data);
+        _deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+        while (!_deflater.finished()) {
+            out.write(buffer, 0, _deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return number of bytes written so far.
+     */
+    public long size() {
+        return _out.size();
+    }
+
+    /**
+     * close the pack, write its index and give both their final names.
+     * @return the finished pack file.
+     */
+    public File finish() {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < _ids.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(_ids::get));
+        ArrayList<Object> sortedIDs = new ArrayList<>();
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        try {
+            _out.close();
+            if (_deflater != null) {
+                _deflater.end();
+            }
+            DataOutputStream idx = new DataOutputStream(index);
+            idx.write(Pack.INDEX_MAGIC);
+            idx.write(Pack.VERSION);
+            idx.writeInt(_ids.size());
+            for (int i : order) {
+                idx.write(Utils.hexToBytes(_ids.get(i)));
+                sortedIDs.add(_ids.get(i));
+            }
+            for (int i : order) {
+                idx.writeLong(_offsets.get(i));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String name = "pack-" + Utils.sha1(sortedIDs);
+        File pack = Utils.join(_dir, name + ".pack");
+        Utils.writeContents(Pack.indexFile(pack), index.toByteArray());
+        if (!_temp.renameTo(pack)) {
+            throw Utils.error("Cannot write pack %s.", pack);
+        }
+        return pack;
+    }
+}
@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The packs of a repo, opened the first time an object is looked up in
+ * them. Deltified blobs are rebuilt from their bases, and the bases are
+ * kept in a cache so reading several versions of a file replays each
+ * delta chain once rather than once per version. Whole objects, commits
+ * among them, are read without touching the cache, and deltas are
+ * rebuilt one at a time, so once the packs are open objects may be read
+ * from several threads.
+ * @author Zheyuan Hu
+ */
+public class Packs {
+    /** bound on the memory held by reconstructed delta bases, in bytes. */
+    static final long BASE_CACHE_BYTES = 16L << 20;
+    /** directory of packs. */
+    private final File _dir;
+    /** the open packs, or null until first needed. */
+    private List<Pack> _packs;
+    /** reconstructed delta bases. */
+    private final LruCache<byte[]> _bases =
+        new LruCache<>(BASE_CACHE_BYTES, b -> b.length);
+
+    /**
+     * constructor.
+     * @param dir directory of packs.
+     */
+    public Packs(File dir) {
+        _dir = dir;
+    }
+
+    /**
+     * @return directory of packs.
+     */
+    public File getDir() {
+        return _dir;
+    }
+
+    /**
+     * open the packs now, so threads about to read objects in parallel
+     * share one list rather than each racing to open it.
+     */
+    public void load() {
+        getPacks();
+    }
+
+    /**
+     * @return the packs, opening them if need be.
+     */
+    public List<Pack> getPacks() {
+        if (_packs == null) {
+            _packs = new ArrayList<>();
+            String[] names = _dir.list((d, name) -> name.endsWith(".pack"));
+            if (names != null) {
+                Arrays.sort(names);
+                for (String name : names) {
+                    _packs.add(new Pack(Utils.join(_dir, name)));
+                }
+            }
+        }
+        return _packs;
+    }
+
+    /**
+     * @param id full object ID.
+     * @return whether some pack holds ID.
+     */
+    public boolean contains(String id) {
+        for (Pack pack : getPacks()) {
+            if (pack.find(id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param id full object ID.
+     * @return the bytes of the object, or null if no pack holds it.
+     */
+    public byte[] get(String id) {
+        for (Pack pack : getPacks()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.type(pos) == Pack.DELTA) {
+                return undelta(pack.read(pos));
+            } else if (pos >= 0) {
+                return pack.read(pos);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param entry a DELTA entry: the raw base ID, then the delta.
+     * @return the object the entry describes.
+     */
+    private synchronized byte[] undelta(byte[] entry) {
+        String baseID = Utils.bytesToHex(
+            Arrays.copyOf(entry, CommitIndex.RAW_LENGTH));
+        byte[] base = _bases.get(baseID);
+        if (base == null) {
+            base = get(baseID);
+            if (base == null) {
+                throw Utils.error("Missing delta base %s.", baseID);
+            }
+            _bases.put(baseID, base);
+        }
+        return Delta.apply(base, entry, CommitIndex.RAW_LENGTH);
+    }
+
+    /**
+     * @param id full object ID.
+     * @return size of the object in bytes, or -1 if no pack holds it.
+     */
+    public long size(String id) {
+        for (Pack pack : getPacks()) {
+            int pos = pack.find(id);
+            if (pos >= 0 && pack.type(pos) == Pack.DELTA) {
+                return Delta.targetSize(pack.read(pos),
+                                        CommitIndex.RAW_LENGTH);
+            } else if (pos >= 0) {
+                return pack.size(pos);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * forget the open packs, so the next lookup sees the current set.
+     */
+    public void reload() {
+        _packs = null;
+    }
+}
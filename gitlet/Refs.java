@@ -0,0 +1,166 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The branches of a repo and which one is checked out. Each branch lives
+ * in its own small file under .gitlet/refs and the current branch's name
+ * in .gitlet/HEAD, so a command reads only the branches it asks for and
+ * rewrites only the ones it changed.
+ * @author Zheyuan Hu
+ */
+public class Refs {
+    /** directory of branch files. */
+    private final File _dir;
+    /** file naming the current branch. */
+    private final File _headFile;
+    /** name of the current branch. */
+    private String _headName;
+    /** name of the current branch as last read or written. */
+    private String _savedHeadName;
+    /** branches read or created by this command. */
+    private final HashMap<String, Branch> _loaded = new HashMap<>();
+    /** ref file contents of loaded branches as last read or written. */
+    private final HashMap<String, String> _savedText = new HashMap<>();
+    /** branches removed by this command. */
+    private final HashSet<String> _removed = new HashSet<>();
+
+    /**
+     * constructor.
+     * @param repoDir gitlet directory.
+     */
+    public Refs(File repoDir) {
+        _dir = Utils.join(repoDir, "refs");
+        _headFile = Utils.join(repoDir, "HEAD");
+        if (_headFile.isFile()) {
+            _headName = Utils.readContentsAsString(_headFile);
+            _savedHeadName = _headName;
+        }
+    }
+
+    /**
+     * @param name branch name.
+     * @return the file holding the branch.
+     */
+    private File refFile(String name) {
+        return Utils.join(_dir, name);
+    }
+
+    /**
+     * @param name branch name.
+     * @return whether the branch exists.
+     */
+    public boolean containsKey(String name) {
+        if (_loaded.containsKey(name)) {
+            return true;
+        }
+        return !_removed.contains(name) && refFile(name).isFile();
+    }
+
+    /**
+     * @param name branch name.
+     * @return the branch, or null if there is none.
+     */
+    public Branch get(String name) {
+        if (!_loaded.containsKey(name)) {
+            if (!containsKey(name)) {
+                return null;
+            }
+            Branch branch = Branch.read(refFile(name), name);
+            _loaded.put(name, branch);
+            _savedText.put(name, branch.toText());
+        }
+        return _loaded.get(name);
+    }
+
+    /**
+     * add or replace a branch.
+     * @param name branch name.
+     * @param branch the branch.
+     */
+    public void put(String name, Branch branch) {
+        _removed.remove(name);
+        _loaded.put(name, branch);
+    }
+
+    /**
+     * remove a branch.
+     * @param name branch name.
+     */
+    public void remove(String name) {
+        _loaded.remove(name);
+        _removed.add(name);
+    }
+
+    /**
+     * @return names of all branches, sorted.
+     */
+    public Set<String> keySet() {
+        TreeSet<String> names = new TreeSet<>();
+        collectNames(_dir, "", names);
+        names.removeAll(_removed);
+        names.addAll(_loaded.keySet());
+        return names;
+    }
+
+    /**
+     * add the names of the branch files under DIR to NAMES.
+     * @param dir directory.
+     * @param prefix branch name prefix for files in DIR.
+     * @param names names found so far.
+     */
+    private void collectNames(File dir, String prefix, Set<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File f : files) {
+            if (f.isDirectory()) {
+                collectNames(f, prefix + f.getName() + "/", names);
+            } else {
+                names.add(prefix + f.getName());
+            }
+        }
+    }
+
+    /**
+     * @return name of the current branch.
+     */
+    public String getHeadName() {
+        return _headName;
+    }
+
+    /**
+     * @param name name of the new current branch.
+     */
+    public void setHeadName(String name) {
+        _headName = name;
+    }
+
+    /**
+     * write HEAD and the branches this command changed.
+     */
+    public void save() {
+        if (_headName != null && !_headName.equals(_savedHeadName)) {
+            Utils.writeContents(_headFile, _headName);
+            _savedHeadName = _headName;
+        }
+        for (String name : _removed) {
+            refFile(name).delete();
+        }
+        _removed.clear();
+        for (String name : _loaded.keySet()) {
+            String text = _loaded.get(name).toText();
+            if (!text.equals(_savedText.get(name))) {
+                File file = refFile(name);
+                file.getParentFile().mkdirs();
+                Utils.writeContents(file, text);
+                _savedText.put(name, text);
+            }
+        }
+    }
+}
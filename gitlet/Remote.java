@@ -1,22 +1,15 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 
 /**
  * @author Zheyuan Hu
  */
-public class Remote implements Serializable {
-    /** serial ID. */
-    private static final long serialVersionUID = -6507518412566652100L;
+public class Remote {
     /** GitLet repo directory for remote. */
     private File _repoDir;
-    /** commit folder. */
-    private File _commitDir;
-    /** command file. */
-    private File _cliFile;
-    /** cli. */
-    private CommandLineTools _cli;
+    /** the remote repo, read when first needed. */
+    private Repository _repo;
 
     /**
      * constructor.
@@ -24,8 +17,6 @@ public class Remote implements Serializable {
      */
     public Remote(File dir) {
         _repoDir = dir;
-        _commitDir = Utils.join(_repoDir, "commits");
-        _cliFile = Utils.join(_repoDir, "cliConf");
     }
 
     /**
@@ -52,31 +43,12 @@ public class Remote implements Serializable {
     }
 
     /**
-     * load cli.
+     * @return the remote repo.
      */
-    public void loadCLI() {
-        _cli = Utils.readObject(_cliFile, CommandLineTools.class);
-    }
-
-    /**
-     * @return cli.
-     */
-    public CommandLineTools getCLI() {
-        if (_cli == null) {
-            loadCLI();
+    public Repository getRepo() {
+        if (_repo == null) {
+            _repo = new Repository(_repoDir);
         }
-        return _cli;
-    }
-
-    /**
-     * read a branch from file, give it a new name.
-     * @param path path
-     * @param name name
-     * @return
-     */
-    public Branch readBranch(File path, String name) {
-        var branch = Utils.readObject(path, Branch.class);
-        branch.setName(name);
-        return branch;
+        return _repo;
     }
 }
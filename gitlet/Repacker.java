@@ -0,0 +1,185 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Rolls every commit, tree and blob of a repo, loose or already packed,
+ * into new packs, then removes the loose files and the old packs. Trees
+ * are stored whole. Blobs are grouped by the file name they were
+ * committed under and, within a group, visited from largest to smallest;
+ * each is stored as a delta against one of the few versions visited just
+ * before it when that is less than half its size. Delta chains are kept
+ * short so reading an old version never replays more than MAX_DEPTH
+ * deltas. Large files stored in chunks stay loose, their chunks already
+ * shared between versions.
+ * @author Zheyuan Hu
+ */
+public class Repacker {
+    /** number of recent versions tried as delta bases. */
+    static final int WINDOW = 4;
+    /** longest chain of deltas allowed. */
+    static final int MAX_DEPTH = 10;
+    /** the repo. */
+    private final Repository _repo;
+    /** packs finished so far. */
+    private final List<File> _written = new ArrayList<>();
+    /** pack being written. */
+    private PackWriter _writer;
+
+    /**
+     * constructor.
+     * @param repo the repo to repack.
+     */
+    public Repacker(Repository repo) {
+        _repo = repo;
+    }
+
+    /**
+     * repack the repo.
+     */
+    public void run() {
+        Packs packs = _repo.getPacks();
+        ObjectStore objects = _repo.getObjects();
+        List<Pack> old = new ArrayList<>(packs.getPacks());
+        _writer = newWriter();
+        List<String> commits = _repo.getCommits();
+        HashMap<String, String> paths = new HashMap<>();
+        TreeSet<String> trees = new TreeSet<>();
+        for (String id : commits) {
+            add(id, Pack.COMMIT, _repo.readCommitBytes(id));
+            Commit commit = _repo.getCommit(id);
+            commit.getBlobs()
+                .forEach((name, blob) -> paths.putIfAbsent(blob, name));
+            if (commit.getTree() != null) {
+                _repo.getTrees().collect(commit.getTree(), trees);
+            }
+        }
+        for (String id : trees) {
+            add(id, Pack.TREE, objects.get(id));
+        }
+        TreeSet<String> blobs = new TreeSet<>();
+        for (String id : objects.looseIDs()) {
+            if (!objects.isChunked(id)) {
+                blobs.add(id);
+            }
+        }
+        for (Pack pack : old) {
+            for (int pos = 0; pos < pack.count(); pos++) {
+                if (pack.type(pos) != Pack.COMMIT) {
+                    blobs.add(pack.idAt(pos));
+                }
+            }
+        }
+        blobs.removeAll(trees);
+        TreeMap<String, List<String>> byPath = new TreeMap<>();
+        for (String id : blobs) {
+            byPath.computeIfAbsent(paths.getOrDefault(id, ""),
+                                   k -> new ArrayList<>()).add(id);
+        }
+        for (List<String> versions : byPath.values()) {
+            addVersions(versions);
+        }
+        _written.add(_writer.finish());
+        for (Pack pack : old) {
+            if (!_written.contains(pack.getFile())) {
+                pack.getFile().delete();
+                Pack.indexFile(pack.getFile()).delete();
+            }
+        }
+        for (String id : commits) {
+            _repo.commitFile(id).delete();
+        }
+        for (String id : blobs) {
+            if (objects.path(id).isFile()) {
+                objects.deleteLoose(id);
+            }
+        }
+        for (String id : trees) {
+            objects.deleteLoose(id);
+        }
+        packs.reload();
+    }
+
+    /**
+     * pack the versions of one file, deltifying where it pays.
+     * @param versions blob IDs of the versions.
+     */
+    private void addVersions(List<String> versions) {
+        ObjectStore objects = _repo.getObjects();
+        HashMap<String, Long> sizes = new HashMap<>();
+        for (String id : versions) {
+            sizes.put(id, objects.size(id));
+        }
+        versions.sort(Comparator.comparing((String id) -> sizes.get(id))
+                      .reversed());
+        ArrayDeque<String> window = new ArrayDeque<>();
+        HashMap<String, byte[]> data = new HashMap<>();
+        HashMap<String, Integer> depth = new HashMap<>();
+        for (String id : versions) {
+            byte[] contents = objects.get(id);
+            byte[] best = null;
+            String bestBase = null;
+            for (String base : window) {
+                byte[] b = data.get(base);
+                if (depth.get(base) >= MAX_DEPTH
+                    || Math.abs(b.length - contents.length)
+                       > Math.max(b.length, contents.length) / 2) {
+                    continue;
+                }
+                byte[] delta = Delta.encode(b, contents);
+                if (delta.length < contents.length / 2
+                    && (best == null || delta.length < best.length)) {
+                    best = delta;
+                    bestBase = base;
+                }
+            }
+            if (best == null) {
+                add(id, Pack.BLOB, contents);
+                depth.put(id, 0);
+            } else {
+                byte[] entry = new byte[CommitIndex.RAW_LENGTH + best.length];
+                System.arraycopy(Utils.hexToBytes(bestBase), 0, entry, 0,
+                                 CommitIndex.RAW_LENGTH);
+                System.arraycopy(best, 0, entry, CommitIndex.RAW_LENGTH,
+                                 best.length);
+                add(id, Pack.DELTA, entry);
+                depth.put(id, depth.get(bestBase) + 1);
+            }
+            window.addFirst(id);
+            data.put(id, contents);
+            if (window.size() > WINDOW) {
+                data.remove(window.removeLast());
+            }
+        }
+    }
+
+    /**
+     * @return a writer for a new pack.
+     */
+    private PackWriter newWriter() {
+        return new PackWriter(_repo.getPacks().getDir(),
+                              _repo.getConfig().compressionLevel());
+    }
+
+    /**
+     * add an object to the pack being written, first finishing it and
+     * starting another if it has grown too large.
+     * @param id object ID.
+     * @param type object type.
+     * @param bytes object bytes.
+     */
+    private void add(String id, int type, byte[] bytes) {
+        if (_writer.size() > PackWriter.MAX_PACK_BYTES) {
+            _written.add(_writer.finish());
+            _writer = newWriter();
+        }
+        _writer.add(id, type, bytes);
+    }
+}
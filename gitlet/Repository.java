@@ -1,61 +1,142 @@
 package gitlet;
 
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.Serializable;
-import java.util.Arrays;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
  * @author Zheyuan Hu
  */
-public class Repository implements Serializable {
-    /** serial ID. */
-    private static final long serialVersionUID = -8322997645750190301L;
-    /** A set of all the commits existing in this gitlet repo. **/
-    private HashSet<String> _commits;
+public class Repository {
     /** The current branch of this repo. **/
     private Branch _head;
-    /** A runtime map mapping hash to branch. **/
-    private HashMap<String, Branch> _branches = new HashMap<>();
+    /** The branches of this repo, read from disk as they are needed. **/
+    private Refs _branches;
     /** The staging area. **/
     private Stage _stage;
-    /** names of the untracked files. need to update every command execution.**/
-    private HashSet<String> _untrackedFiles;
+    /** names of the untracked files, or null until a command needs them. */
+    private Set<String> _untrackedFiles;
     /** Removed files since last commit.Need to clear it for every new commit.*/
-    private HashSet<String> _removedFiles = new HashSet<>();
-    /** Whether the repo has been initialized. **/
-    private boolean _initialized = false;
+    private HashSet<String> _removedFiles;
     /** merge conflict. */
     private boolean _conflicts = false;
     /** repo gitlet path. */
-    private File _repoDir = CommandLineTools.REPO_DIR;
+    private File _repoDir;
+    /** most threads global-log decodes commits on. */
+    static final int MAX_LOG_THREADS = 8;
+    /** number of commits global-log decodes before writing them. */
+    static final int LOG_BATCH = 256;
+    /** most threads checkout writes working files on. */
+    static final int MAX_CHECKOUT_THREADS = 8;
+    /** most threads add hashes and stores files on. */
+    static final int MAX_ADD_THREADS = 8;
+    /** suffix of the temporary files checkout writes before renaming. */
+    static final String TEMP_SUFFIX = ".tmp";
+    /** suffix of the backups of the files checkout replaces. */
+    static final String BACKUP_SUFFIX = ".bak";
+    /** default bound on the memory held by decoded commits, in bytes. */
+    static final long COMMIT_CACHE_BYTES = 32L << 20;
+    /** decoded commits, so repeated lookups skip the disk. */
+    private LruCache<Commit> _commitCache;
+    /** sorted index of commit IDs, also the set of all commits. */
+    private CommitIndex _commitIndex;
+    /** parents, generations and times of all commits. */
+    private CommitGraph _commitGraph;
+    /** stored reachability bitmaps. */
+    private BitmapIndex _bitmaps;
+    /** index of commit messages. */
+    private MessageIndex _messages;
+    /** packs of commits and blobs written by gc. */
+    private Packs _packs;
+    /** store of blob contents. */
+    private ObjectStore _objects;
+    /** trees of the commits' files, kept in the object store. */
+    private TreeStore _trees;
+    /** settings of the repo. */
+    private Config _config;
+    /** cached blob IDs of working files. */
+    private StatIndex _statIndex;
+    /** comparison of working files against stored blobs. */
+    private ContentComparator _comparator;
+    /** number of working files written from the object store. */
+    private int _filesWritten;
+    /** number of bytes written to working files from the object store. */
+    private long _bytesWritten;
+
     /**
-     * Constructor.
+     * Constructor for the repo in the current directory.
      */
     public Repository() {
-        _stage = new Stage();
-        _commits = new HashSet<>();
-        _branches.put("master", new Branch("master"));
-        _untrackedFiles = new HashSet<>();
+        this(CommandLineTools.REPO_DIR);
+    }
+
+    /**
+     * Constructor. Only the current branch and the stage are read here;
+     * everything else is read when a command first needs it.
+     * @param repoDir gitlet directory of the repo.
+     */
+    public Repository(File repoDir) {
+        _repoDir = repoDir;
+        _branches = new Refs(repoDir);
+        _stage = new Stage(Utils.join(repoDir, "stage"));
+        _removedFiles = _stage.getRemoved();
+        if (_branches.getHeadName() != null) {
+            _head = _branches.get(_branches.getHeadName());
+        }
     }
 
     /**
      * init the repo. Create the first commit.
      */
     public void initialize() {
+        _branches.put("master", new Branch("master"));
         Commit firstCommit = new Commit("master", "initial commit");
         makeCommit(firstCommit);
-        _initialized = true;
     }
 
     /**
-     * @param path path
+     * @return whether the repo has been initialized.
+     */
+    public boolean isInitialized() {
+        return _head != null;
+    }
+
+    /**
+     * write the parts of the repo this command changed.
      */
-    public void setRepoDir(File path) {
-        _repoDir = path;
+    public void save() {
+        if (isInitialized()) {
+            _branches.save();
+            _stage.save();
+            if (_statIndex != null) {
+                _statIndex.save();
+            }
+        }
     }
 
     /**
@@ -63,36 +144,66 @@ public class Repository implements Serializable {
      * @param fileName file name.
      */
     public void add(String fileName) {
-        File f = new File(fileName);
-        if (!f.exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        addAll(List.of(fileName));
+    }
+
+    /**
+     * add many files to the staging area at once. Every file must exist,
+     * or nothing is staged. The files are compared with the head commit,
+     * and hashed and stored where they differ, in parallel on a bounded
+     * fork-join pool; each is then staged as add stages a single file.
+     * @param fileNames file names.
+     */
+    public void addAll(List<String> fileNames) {
+        for (String fileName : fileNames) {
+            if (!new File(fileName).isFile()) {
+                System.out.println("File does not exist.");
+                System.exit(0);
+            }
         }
-        Commit headCommit = getHeadCommit();
-        if (headCommit.getBlobs().containsKey(fileName)) {
-            Blob blob = headCommit.getBlobs().get(fileName);
-            byte[] commited = (byte[]) blob.getContents();
-            byte[] newContents = Utils.readContents(new File(fileName));
-            if (Arrays.equals(commited, newContents)) {
-                if (_stage.contains(fileName)) {
-                    _stage.remove(fileName);
-                }
-            } else {
-                if (_stage.contains(fileName)) {
-                    _stage.updateFile(fileName);
-                } else {
-                    _stage.add(fileName);
+        HashMap<String, String> heads = getHeadCommit().getBlobs();
+        ContentComparator comparator = getComparator();
+        StatIndex stats = getStatIndex();
+        ObjectStore objects = getObjects();
+        getPacks().load();
+        ForkJoinPool pool = boundedPool(MAX_ADD_THREADS);
+        List<String> ids;
+        try {
+            ids = pool.submit(() -> fileNames.parallelStream().map(name -> {
+                String head = heads.get(name);
+                if (Boolean.TRUE.equals(
+                        comparator.sameWithoutHashing(name, head))) {
+                    return head;
                 }
-            }
-        } else {
+                return stats.id(name, objects::putWorking);
+            }).collect(Collectors.toList())).join();
+        } finally {
+            pool.shutdownNow();
+        }
+        for (int i = 0; i < fileNames.size(); i++) {
+            stage(fileNames.get(i), ids.get(i), heads.get(fileNames.get(i)));
+        }
+    }
+
+    /**
+     * stage a working file, whose contents are already stored.
+     * @param fileName file name.
+     * @param id blob ID of its contents.
+     * @param head its blob ID in the head commit, or null.
+     */
+    private void stage(String fileName, String id, String head) {
+        if (id.equals(head)) {
             if (_stage.contains(fileName)) {
-                _stage.updateFile(fileName);
-            } else {
-                _stage.add(fileName);
+                _stage.remove(fileName);
             }
+        } else if (!id.equals(_stage.get(fileName))
+                   || !getObjects().contains(id)) {
+            _stage.add(fileName, id, getObjects());
         }
         _removedFiles.remove(fileName);
-        _untrackedFiles.remove(fileName);
+        if (_untrackedFiles != null) {
+            _untrackedFiles.remove(fileName);
+        }
     }
 
     /**
@@ -109,8 +220,7 @@ public class Repository implements Serializable {
         }
         if (headCommit.getBlobs().containsKey(fileName)) {
             _removedFiles.add(fileName);
-            File file = new File(fileName);
-            file.delete();
+            deleteWorking(fileName);
         }
         if (_stage.contains(fileName)) {
             _stage.remove(fileName);
@@ -125,6 +235,158 @@ public class Repository implements Serializable {
         return _head;
     }
 
+    /**
+     * @return the object store holding file contents.
+     */
+    public ObjectStore getObjects() {
+        if (_objects == null) {
+            _objects = new ObjectStore(Utils.join(_repoDir, "objects"),
+                getPacks(), getConfig().compressionLevel(),
+                Utils.join(_repoDir, "chunks"),
+                getConfig().bigFileThreshold());
+        }
+        return _objects;
+    }
+
+    /**
+     * @return the cache of working files' blob IDs.
+     */
+    public StatIndex getStatIndex() {
+        if (_statIndex == null) {
+            _statIndex = new StatIndex(Utils.join(_repoDir, "index"));
+        }
+        return _statIndex;
+    }
+
+    /**
+     * @return the comparison of working files against stored blobs.
+     */
+    public ContentComparator getComparator() {
+        if (_comparator == null) {
+            _comparator = new ContentComparator(getObjects(), getStatIndex());
+        }
+        return _comparator;
+    }
+
+    /**
+     * @param fileName name of a working file.
+     * @param id blob ID, or null.
+     * @return whether the file exists and holds the blob ID. Unchanged
+     *         files are recognized by their metadata and not read.
+     */
+    public boolean sameAsWorking(String fileName, String id) {
+        return getComparator().same(fileName, id);
+    }
+
+    /**
+     * write the blob ID to the working file FILENAME.
+     * @param id blob ID.
+     * @param fileName file name.
+     */
+    private void writeWorking(String id, String fileName) {
+        File file = new File(fileName);
+        makeParents(file);
+        _bytesWritten += getObjects().writeTo(id, file);
+        _filesWritten++;
+        getStatIndex().record(fileName, id);
+    }
+
+    /**
+     * @return number of working files written from the object store.
+     */
+    public int getFilesWritten() {
+        return _filesWritten;
+    }
+
+    /**
+     * @return number of bytes written to working files from the object
+     *         store.
+     */
+    public long getBytesWritten() {
+        return _bytesWritten;
+    }
+
+    /**
+     * create the directories a working file is to be written in.
+     * @param file working file.
+     */
+    private static void makeParents(File file) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw Utils.error("Cannot create directory %s.", parent);
+        }
+    }
+
+    /**
+     * delete the working file FILENAME, then any directories above it
+     * that this leaves empty.
+     * @param fileName path of the file.
+     */
+    private static void deleteWorking(String fileName) {
+        File file = new File(fileName);
+        file.delete();
+        File dir = file.getParentFile();
+        while (dir != null && dir.isDirectory() && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /**
+     * @return settings of the repo.
+     */
+    public Config getConfig() {
+        if (_config == null) {
+            _config = new Config(_repoDir);
+        }
+        return _config;
+    }
+
+    /**
+     * @return the trees of this repo.
+     */
+    public TreeStore getTrees() {
+        if (_trees == null) {
+            _trees = new TreeStore(getObjects());
+        }
+        return _trees;
+    }
+
+    /**
+     * @return the packs of this repo.
+     */
+    public Packs getPacks() {
+        if (_packs == null) {
+            _packs = new Packs(Utils.join(_repoDir, "packs"));
+        }
+        return _packs;
+    }
+
+    /**
+     * @param id blob ID.
+     * @return contents of the blob.
+     */
+    public byte[] readBlob(String id) {
+        return getObjects().get(id);
+    }
+
+    /**
+     * copy the trees and blobs of COMMIT that this repo lacks from
+     * SOURCE's store.
+     * @param commit commit whose blobs are needed.
+     * @param source repo holding the blobs.
+     */
+    public void copyObjects(Commit commit, Repository source) {
+        if (commit.getTree() != null) {
+            source.getTrees().copyTo(commit.getTree(), getTrees());
+            return;
+        }
+        ObjectStore from = source.getObjects();
+        ObjectStore to = getObjects();
+        for (String blobID : commit.getBlobs().values()) {
+            from.copyTo(blobID, to);
+        }
+    }
+
     /**
      * @return head commit.
      */
@@ -133,16 +395,16 @@ public class Repository implements Serializable {
     }
 
     /**
-     * @return _commits
+     * @return IDs of all commits, sorted.
      */
-    public HashSet<String> getCommits() {
-        return _commits;
+    public List<String> getCommits() {
+        return getCommitIndex().all();
     }
 
     /**
      * @return _branches
      */
-    public HashMap<String, Branch> getBranches() {
+    public Refs getBranches() {
         return _branches;
     }
 
@@ -154,20 +416,236 @@ public class Repository implements Serializable {
         if (id == null) {
             return null;
         }
+        id = resolveID(id);
+        Commit commit = getCommitCache().get(id);
+        if (commit == null) {
+            commit = CommitCodec.decode(readCommitBytes(id), getTrees());
+            getCommitCache().put(id, commit);
+        }
+        return commit;
+    }
+
+    /**
+     * read only the header of a commit, which is all that history walks
+     * and log output need.
+     * @param id id, possibly abbreviated.
+     * @return the commit's header, or null if ID is null.
+     */
+    public CommitHeader getHeader(String id) {
+        if (id == null) {
+            return null;
+        }
+        id = resolveID(id);
+        Commit commit = getCommitCache().get(id);
+        if (commit != null) {
+            return commit.getHeader();
+        }
+        return readHeader(id);
+    }
+
+    /**
+     * read the header of a commit from its loose file, or from the packs
+     * if there is none. The file is opened without first being checked
+     * for, and no cache is touched, so once the packs are open this may
+     * run on several threads.
+     * @param id full commit ID.
+     * @return the commit's header.
+     */
+    private CommitHeader readHeader(String id) {
+        InputStream in = ObjectStore.openIfExists(commitFile(id));
+        if (in == null) {
+            return CommitCodec.decodeHeader(readPackedCommit(id));
+        }
+        try (DataInputStream data = new DataInputStream(in)) {
+            return CommitCodec.readHeader(data);
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt commit: %s", excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return the encoded commit, from its loose file or from a pack.
+     */
+    byte[] readCommitBytes(String id) {
+        InputStream in = ObjectStore.openIfExists(commitFile(id));
+        if (in == null) {
+            return readPackedCommit(id);
+        }
+        try (in) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return the encoded commit, from a pack.
+     */
+    private byte[] readPackedCommit(String id) {
+        byte[] packed = getPacks().get(id);
+        if (packed == null) {
+            throw Utils.error("Missing commit %s.", id);
+        }
+        return packed;
+    }
+
+    /**
+     * pack every commit and blob into new packs.
+     */
+    public void gc() {
+        new Repacker(this).run();
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return the file holding the commit.
+     */
+    File commitFile(String id) {
+        return Utils.join(Utils.join(_repoDir, "commits"), id);
+    }
+
+    /**
+     * expand an abbreviated ID, exiting with a message if no commit or
+     * more than one commit matches.
+     * @param id id, possibly abbreviated.
+     * @return the full ID.
+     */
+    public String resolveID(String id) {
         if (id.length() < Utils.UID_LENGTH) {
-            for (String commitID : _commits) {
-                if (commitID.substring(0, id.length()).equals(id)) {
-                    id = commitID;
-                    break;
-                }
+            var matches = getCommitIndex().matches(id, 2);
+            if (matches.size() > 1) {
+                System.out.println("Commit id " + id + " is ambiguous.");
+                System.exit(0);
+            } else if (matches.size() == 1) {
+                id = matches.get(0);
             }
         }
-        if (!_commits.contains(id)) {
+        if (!hasCommit(id)) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
         }
-        File file = Utils.join(Utils.join(_repoDir, "commits"), id);
-        return Utils.readObject(file, Commit.class);
+        return id;
+    }
+
+    /**
+     * @return the index of commit IDs.
+     */
+    public CommitIndex getCommitIndex() {
+        if (_commitIndex == null) {
+            _commitIndex = new CommitIndex(_repoDir);
+        }
+        return _commitIndex;
+    }
+
+    /**
+     * @return the commit graph, first adding any commits it lacks, as
+     *         after a fetch that copied children before their parents or
+     *         in a repo made before the graph existed.
+     */
+    public CommitGraph getCommitGraph() {
+        if (_commitGraph == null) {
+            _commitGraph = new CommitGraph(_repoDir);
+            if (_commitGraph.size() == 0) {
+                getBitmaps().clear();
+            }
+        }
+        if (_commitGraph.size() != getCommitIndex().size()) {
+            fillCommitGraph();
+        }
+        return _commitGraph;
+    }
+
+    /**
+     * @return the index of commit messages.
+     */
+    public MessageIndex getMessageIndex() {
+        if (_messages == null) {
+            _messages = new MessageIndex(_repoDir);
+        }
+        return _messages;
+    }
+
+    /**
+     * @return the index of commit messages, first adding any commits it
+     *         lacks, as in a repo made before the index existed.
+     */
+    private MessageIndex getFullMessageIndex() {
+        MessageIndex messages = getMessageIndex();
+        if (messages.size() < getCommitIndex().size()) {
+            for (String id : messages.missing(getCommits())) {
+                messages.add(id, getHeader(id).getLog());
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return the stored reachability bitmaps.
+     */
+    public BitmapIndex getBitmaps() {
+        if (_bitmaps == null) {
+            _bitmaps = new BitmapIndex(_repoDir);
+        }
+        return _bitmaps;
+    }
+
+    /**
+     * @param id full commit ID.
+     * @return commit graph positions of the commit and all its ancestors.
+     */
+    public Bitmap reachable(String id) {
+        CommitGraph graph = getCommitGraph();
+        return getBitmaps().reachable(graph, graph.position(id));
+    }
+
+    /**
+     * add every commit missing from the graph, parents first.
+     */
+    private void fillCommitGraph() {
+        CommitGraph graph = _commitGraph;
+        HashMap<String, CommitHeader> pending = new HashMap<>();
+        for (String id : getCommits()) {
+            if (graph.position(id) == CommitGraph.NONE) {
+                pending.put(id, getHeader(id));
+            }
+        }
+        ArrayDeque<CommitHeader> stack = new ArrayDeque<>();
+        for (String id : getCommits()) {
+            if (pending.containsKey(id)) {
+                stack.push(pending.get(id));
+            }
+            while (!stack.isEmpty()) {
+                CommitHeader header = stack.peek();
+                if (graph.add(header)) {
+                    stack.pop();
+                    pending.remove(header.getID());
+                    continue;
+                }
+                for (String parent : new String[] {header.getParent(),
+                                                   header.getMergeFrom()}) {
+                    if (parent != null
+                        && graph.position(parent) == CommitGraph.NONE) {
+                        if (!pending.containsKey(parent)) {
+                            throw Utils.error("Missing commit %s.", parent);
+                        }
+                        stack.push(pending.get(parent));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the cache of decoded commits, with its hit and miss counts.
+     */
+    public LruCache<Commit> getCommitCache() {
+        if (_commitCache == null) {
+            _commitCache =
+                new LruCache<>(COMMIT_CACHE_BYTES, Commit::estimatedSize);
+        }
+        return _commitCache;
     }
 
     /**
@@ -175,24 +653,26 @@ public class Repository implements Serializable {
      * @return whether is there such a commit
      */
     public boolean hasCommit(String id) {
-        return _commits.contains(id);
+        return getCommitIndex().contains(id);
     }
 
     /**
-     * add commit to the commit set.
+     * add a commit copied from another repo to the commit set.
      * It also clears the staging area and the remove set.
      * @param commit commit.
      * @param path path
      */
     public void copyCommit(Commit commit, File path) {
         String id = commit.getID();
-        _commits.add(id);
-        File file = Utils.join(path, id);
-        Utils.writeObject(file, commit);
-        if (!_branches.containsKey(commit.getBranch())) {
-            Branch newBranch = new Branch(commit.getBranch());
-            _branches.put(commit.getBranch(), newBranch);
+        CommitGraph graph = getCommitGraph();
+        if (!hasCommit(id)) {
+            getMessageIndex().add(id, commit.getLog());
         }
+        getCommitIndex().add(id);
+        graph.add(commit.getHeader());
+        File file = Utils.join(path, id);
+        CommitCodec.write(file, commit, getConfig().compressionLevel());
+        getCommitCache().remove(id);
         _removedFiles.clear();
         _stage.clear();
     }
@@ -204,21 +684,33 @@ public class Repository implements Serializable {
      */
     public void makeCommit(Commit commit) {
         String id = commit.getID();
-        _commits.add(id);
-        _head = _branches.get(commit.getBranch());
-        File file = Utils.join(Utils.join(_repoDir, "commits"), id);
-        Utils.writeObject(file, commit);
-        if (_branches.containsKey(commit.getBranch())) {
-            _head.updateHead(commit.getID());
-        } else {
-            Branch newBranch = new Branch(commit.getBranch());
-            newBranch.updateHead(commit.getID());
-            _branches.put(commit.getBranch(), newBranch);
+        CommitGraph graph = getCommitGraph();
+        if (!hasCommit(id)) {
+            getMessageIndex().add(id, commit.getLog());
         }
+        getCommitIndex().add(id);
+        graph.add(commit.getHeader());
+        CommitCodec.write(commitFile(id), commit,
+            getConfig().compressionLevel());
+        getCommitCache().put(id, commit);
+        if (!_branches.containsKey(commit.getBranch())) {
+            _branches.put(commit.getBranch(), new Branch(commit.getBranch()));
+        }
+        setHead(_branches.get(commit.getBranch()));
+        _head.updateHead(commit);
         _removedFiles.clear();
         _stage.clear();
     }
 
+    /**
+     * make BRANCH the current branch.
+     * @param branch branch.
+     */
+    private void setHead(Branch branch) {
+        _head = branch;
+        _branches.setHeadName(branch.getName());
+    }
+
     /**
      * commit with log.
      * @param log log messages
@@ -226,62 +718,167 @@ public class Repository implements Serializable {
     public void commit(String log) {
         Commit parent = getHeadCommit();
         String branch = _head.getName();
-        Commit commit = new Commit(parent, branch, log, _stage, _removedFiles);
+        Commit commit = new Commit(parent, branch, log, stagedTree(parent),
+                                   getTrees());
         makeCommit(commit);
     }
 
     /**
-     * generate log.
+     * @param parent parent of the commit being made.
+     * @return ID of PARENT's tree with the staged additions and removals
+     *         applied. Only the trees on the changed paths are written.
+     */
+    private String stagedTree(Commit parent) {
+        String root = parent.getTree();
+        if (root == null) {
+            root = getTrees().update(Tree.EMPTY_ID, parent.getBlobs());
+        }
+        HashMap<String, String> changes = new HashMap<>();
+        for (String fileName : _removedFiles) {
+            changes.put(fileName, null);
+        }
+        changes.putAll(_stage.getAll());
+        return getTrees().update(root, changes);
+    }
+
+    /**
+     * @return a buffered writer on standard output. Unlike System.out it
+     *         reports a closed pipe, so a long listing can stop early.
+     */
+    private static Writer openStdout() {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(FileDescriptor.out), Charset.defaultCharset()),
+            ObjectStore.BUFFER_SIZE);
+    }
+
+    /**
+     * @param max most threads wanted.
+     * @return a new fork-join pool of MAX threads, or fewer on a machine
+     *         with fewer cores.
+     */
+    private static ForkJoinPool boundedPool(int max) {
+        return new ForkJoinPool(Math.min(max,
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * write the log entry of a commit.
+     * @param out output.
+     * @param c header of the commit.
+     * @throws IOException if OUT fails.
      */
-    public void log() {
-        Commit c = getHeadCommit();
-        while (c != null) {
-            System.out.println("===");
-            System.out.println("commit " + c.getID());
-            if (c.getMergeFrom() != null) {
-                System.out.println(String.format("Merge: %s %s",
-                    c.getParent().substring(0, 7),
-                    c.getMergeFrom().substring(0, 7)));
+    private static void writeEntry(Writer out, CommitHeader c)
+        throws IOException {
+        out.write("===\n");
+        out.write("commit " + c.getID() + "\n");
+        if (c.getMergeFrom() != null) {
+            out.write(String.format("Merge: %s %s\n",
+                c.getParent().substring(0, 7),
+                c.getMergeFrom().substring(0, 7)));
+        }
+        out.write("Date: " + c.getTimestamp() + "\n");
+        out.write(c.getLog() + "\n");
+        out.write("\n");
+    }
+
+    /**
+     * generate log, following first parents from the head. Commits are
+     * skipped and counted on the commit graph, and only the headers of
+     * those printed are read. The walk ends at the first commit older
+     * than the --since date.
+     * @param options skip, limit and since.
+     */
+    public void log(LogOptions options) {
+        CommitGraph graph = getCommitGraph();
+        Writer out = openStdout();
+        try {
+            int skipped = 0;
+            int printed = 0;
+            int pos = graph.position(_head.getHeadID());
+            while (pos != CommitGraph.NONE && printed < options.getLimit()
+                   && graph.time(pos) >= options.getSince()) {
+                if (skipped < options.getSkip()) {
+                    skipped++;
+                } else {
+                    writeEntry(out, getHeader(graph.id(pos)));
+                    printed++;
+                }
+                pos = graph.parent(pos);
             }
-            System.out.println("Date: " + c.getTimestamp());
-            System.out.println(c.getLog());
-            System.out.println();
-            c = getCommit(c.getParent());
+            out.flush();
+        } catch (IOException excp) {
+            return;
         }
     }
 
     /**
-     * generate global log.
+     * generate global log, in commit ID order. The commits to print are
+     * chosen on the commit graph; their headers are then decoded a batch
+     * at a time on a bounded fork-join pool and written in order, so the
+     * output does not depend on the number of threads.
+     * @param options skip, limit and since.
      */
-    public void globalLog() {
-        var fileNames = Utils.plainFilenamesIn(CommandLineTools.COMMIT_DIR);
-        for (String id : fileNames) {
-            Commit c = getCommit(id);
-            System.out.println("===");
-            System.out.println("commit " + c.getID());
-            if (c.getMergeFrom() != null) {
-                System.out.println(String.format("Merge: %s %s",
-                    c.getParent().substring(0, 7),
-                    c.getMergeFrom().substring(0, 7)));
+    public void globalLog(LogOptions options) {
+        CommitGraph graph = getCommitGraph();
+        ArrayList<String> chosen = new ArrayList<>();
+        int skipped = 0;
+        for (String id : getCommits()) {
+            if (chosen.size() >= options.getLimit()) {
+                break;
+            } else if (graph.time(graph.position(id)) < options.getSince()) {
+                continue;
+            } else if (skipped < options.getSkip()) {
+                skipped++;
+            } else {
+                chosen.add(id);
             }
-            System.out.println("Date: " + c.getTimestamp());
-            System.out.println(c.getLog());
-            System.out.println();
+        }
+        getPacks().load();
+        Writer out = openStdout();
+        ForkJoinPool pool = boundedPool(MAX_LOG_THREADS);
+        try {
+            for (int i = 0; i < chosen.size(); i += LOG_BATCH) {
+                List<String> batch =
+                    chosen.subList(i, Math.min(i + LOG_BATCH, chosen.size()));
+                for (CommitHeader c : pool.submit(() -> batch.parallelStream()
+                         .map(this::readHeader)
+                         .collect(Collectors.toList())).join()) {
+                    writeEntry(out, c);
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            return;
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     /**
-     * find the commit id based on commit log.
-     * @param log log.
+     * find the commits whose messages match QUERY, looking them up in the
+     * message index rather than reading any commit. MODE is null for an
+     * exact message, "--word" for messages holding every word of QUERY,
+     * and "--substring" or "--regex" for a parallel scan of all messages.
+     * @param mode kind of match, or null.
+     * @param query message, words, text or pattern.
      */
-    public void find(String log) {
-        var match = _commits.stream()
-            .filter(c -> getCommit(c).getLog().equals(log))
-            .toArray();
-        for (Object m : match) {
+    public void find(String mode, String query) {
+        MessageIndex messages = getFullMessageIndex();
+        List<String> match;
+        if (mode == null) {
+            match = messages.withMessage(query);
+        } else if (mode.equals("--word")) {
+            match = messages.withWords(query);
+        } else if (mode.equals("--substring")) {
+            match = messages.scan(m -> m.contains(query));
+        } else {
+            Pattern pattern = Pattern.compile(query);
+            match = messages.scan(m -> pattern.matcher(m).find());
+        }
+        for (String m : match) {
             System.out.println(m);
         }
-        if (match.length == 0) {
+        if (match.isEmpty()) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -290,7 +887,7 @@ public class Repository implements Serializable {
      * this is truly unnecessary. But there is a line limit of 60.
      */
     public void preStatus() {
-        if (!_initialized) {
+        if (!isInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
             System.exit(0);
         }
@@ -315,10 +912,9 @@ public class Repository implements Serializable {
         System.out.println("=== Staged Files ===");
         var stage = _stage.getAll().keySet();
         var modified = stage.stream().filter(file -> {
-            File staged = Utils.join(CommandLineTools.STAGE_DIR, file);
             File inStage = new File(file);
-            return !Utils.readContentsAsString(staged)
-                .equals(Utils.readContentsAsString(inStage));
+            return inStage.exists()
+                && !sameAsWorking(file, _stage.get(file));
         }).sorted().collect(Collectors.toSet());
         var removed = stage.stream().filter(file -> {
             File inStage = new File(file);
@@ -332,20 +928,20 @@ public class Repository implements Serializable {
         _removedFiles.forEach(file -> System.out.println(file));
         System.out.println();
         System.out.println("=== Modifications Not Staged For Commit ===");
-        removed.addAll(getHeadCommit().getBlobs().keySet().
+        var heads = getHeadCommit().getBlobs();
+        removed.addAll(heads.keySet().
             stream().filter(fileName -> {
                 File file = new File(fileName);
                 return (!file.exists() && !_removedFiles.contains(fileName));
             }).collect(Collectors.toSet()));
-        modified.addAll(getHeadCommit().getBlobs().keySet().
+        modified.addAll(heads.keySet().
             stream().filter(fileName -> {
                 File file = new File(fileName);
                 if (!file.exists()) {
                     return false;
                 }
-                var contents = Utils.readContents(file);
-                var b = getHeadCommit().getBlobs().get(fileName).getContents();
-                return !Arrays.equals(contents, b)
+                var b = heads.get(fileName);
+                return !sameAsWorking(fileName, b)
                     && !modified.contains(fileName);
             }).collect(Collectors.toSet()));
         Stream.concat(modified.stream(), removed.stream()).sorted()
@@ -358,7 +954,8 @@ public class Repository implements Serializable {
             });
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        _untrackedFiles.stream().sorted().forEach(f -> System.out.println(f));
+        getUntracked().stream().sorted()
+            .forEach(f -> System.out.println(f));
     }
 
     /**
@@ -371,7 +968,7 @@ public class Repository implements Serializable {
             System.exit(0);
         }
         Branch branch = new Branch(name);
-        branch.updateHead(getHeadCommit().getID());
+        branch.updateHead(getHeadCommit());
         _branches.put(name, branch);
     }
 
@@ -402,7 +999,7 @@ public class Repository implements Serializable {
         }
         Commit commit = getCommit(id);
         checkoutByCommit(commit);
-        _head.updateHead(id);
+        _head.updateHead(commit);
     }
 
     /**
@@ -417,7 +1014,7 @@ public class Repository implements Serializable {
         }
         Commit commit = getCommit(id);
         checkoutByCommit(commit);
-        _head.updateHead(id);
+        _head.updateHead(commit);
     }
 
     /**
@@ -431,39 +1028,217 @@ public class Repository implements Serializable {
         } else {
             Commit commit = getCommit(_branches.get(branch).getHeadID());
             checkoutByCommit(commit);
-            _head = _branches.get(branch);
+            setHead(_branches.get(branch));
         }
     }
 
     /**
+     * make the working tree match COMMIT, writing and deleting only the
+     * files whose blobs differ between the head commit and COMMIT. A
+     * changed file whose working copy already holds COMMIT's version is
+     * left alone.
      * @param commit commit.
      */
     public void checkoutByCommit(Commit commit) {
-        for (String filename : commit.getBlobs().keySet()) {
-            if (_untrackedFiles.contains(filename)) {
-                byte[] fileContent = Utils.readContents(new File(filename));
-                byte[] commitFileContent =
-                    (byte[]) commit.getBlobs().get(filename).getContents();
-                if (!Arrays.equals(fileContent, commitFileContent)) {
-                    System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                    System.exit(0);
-                }
+        Map<String, String> changes = changedFiles(getHeadCommit(), commit);
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String filename = change.getKey();
+            if (change.getValue() != null
+                && getUntracked().contains(filename)
+                && !sameAsWorking(filename, change.getValue())) {
+                System.out.println("There is an untracked file in the way; "
+                    + "delete it, or add and commit it first.");
+                System.exit(0);
             }
         }
-        for (String filename : commit.getBlobs().keySet()) {
-            Object content = commit.getBlobs().get(filename).getContents();
-            Utils.writeContents(new File(filename), content);
+        TreeMap<String, String> writes = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String filename = change.getKey();
+            if (change.getValue() != null
+                && !sameAsWorking(filename, change.getValue())) {
+                writes.put(filename, change.getValue());
+            }
         }
-        for (String filename : _head.getTrackedFiles()) {
-            if (!commit.getBlobs().containsKey(filename)) {
-                File f = new File(filename);
-                f.delete();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteWorking(change.getKey());
             }
         }
+        writeWorkingFiles(writes);
         _stage.clear();
     }
 
+    /**
+     * write many working files at once. Each is written from the object
+     * store to a temporary file in .gitlet/checkout, in parallel on a
+     * bounded fork-join pool. Only once every write has succeeded are they
+     * renamed into place, each file they replace first being moved aside
+     * as a backup. If a rename fails, the files already renamed are taken
+     * out again and the backups this call made put back, so a failed
+     * checkout leaves the working tree as it was.
+     * @param files map from file name to blob ID.
+     */
+    private void writeWorkingFiles(Map<String, String> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>(files.keySet());
+        for (String name : names) {
+            makeParents(new File(name));
+        }
+        clearCheckoutDir();
+        ObjectStore objects = getObjects();
+        getPacks().load();
+        ForkJoinPool pool = boundedPool(MAX_CHECKOUT_THREADS);
+        long[] sizes;
+        try {
+            sizes = pool.submit(() -> IntStream.range(0, names.size())
+                .parallel().mapToLong(i -> objects.writeTo(
+                    files.get(names.get(i)), tempFile(i)))
+                .toArray()).join();
+        } catch (RuntimeException excp) {
+            clearCheckoutDir();
+            throw Utils.error("Cannot write working files: %s",
+                excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        boolean[] backedUp = new boolean[names.size()];
+        for (int i = 0; i < names.size(); i++) {
+            Path target = Paths.get(names.get(i));
+            try {
+                if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)
+                    && !Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.move(target, backupFile(i).toPath());
+                    backedUp[i] = true;
+                }
+                Files.move(tempFile(i).toPath(), target);
+            } catch (IOException excp) {
+                restoreWorkingFiles(names, i, backedUp);
+                clearCheckoutDir();
+                throw Utils.error("Cannot write %s: %s", names.get(i),
+                    excp.getMessage());
+            }
+        }
+        for (int i = 0; i < names.size(); i++) {
+            _filesWritten++;
+            _bytesWritten += sizes[i];
+            getStatIndex().record(names.get(i), files.get(names.get(i)));
+        }
+        clearCheckoutDir();
+    }
+
+    /**
+     * undo the renames of a checkout that failed while renaming file
+     * FAILED into place: take out each file renamed before it, and move
+     * back every backup, FAILED's included.
+     * @param names names of the files being written.
+     * @param failed position of the file whose rename failed.
+     * @param backedUp which of the files were moved aside as backups.
+     */
+    private void restoreWorkingFiles(List<String> names, int failed,
+                                     boolean[] backedUp) {
+        for (int i = failed; i >= 0; i--) {
+            Path target = Paths.get(names.get(i));
+            try {
+                if (backedUp[i]) {
+                    Files.move(backupFile(i).toPath(), target,
+                               StandardCopyOption.REPLACE_EXISTING);
+                } else if (i < failed) {
+                    Files.deleteIfExists(target);
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot restore %s: %s", names.get(i),
+                    excp.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the directory checkout writes temporary files in. It is
+     *         inside .gitlet, so a file left there by a crash is never
+     *         taken for an untracked working file, and on the same
+     *         filesystem as the working tree, so files are renamed out of
+     *         it rather than copied.
+     */
+    private File checkoutDir() {
+        return Utils.join(_repoDir, "checkout");
+    }
+
+    /**
+     * @param index position of a file among those being written.
+     * @return the temporary file it is written to before being renamed
+     *         into place.
+     */
+    private File tempFile(int index) {
+        return Utils.join(checkoutDir(), index + TEMP_SUFFIX);
+    }
+
+    /**
+     * @param index position of a file among those being written.
+     * @return the file the working file it replaces is moved to until
+     *         every file has been renamed into place.
+     */
+    private File backupFile(int index) {
+        return Utils.join(checkoutDir(), index + BACKUP_SUFFIX);
+    }
+
+    /**
+     * create the checkout directory if need be and delete anything left
+     * in it, directories included.
+     */
+    private void clearCheckoutDir() {
+        File dir = checkoutDir();
+        dir.mkdirs();
+        File[] leftovers = dir.listFiles();
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                deleteAll(file);
+            }
+        }
+    }
+
+    /**
+     * delete FILE and, if it is a directory, everything under it.
+     * @param file file or directory.
+     */
+    private static void deleteAll(File file) {
+        if (file.isDirectory() && !Files.isSymbolicLink(file.toPath())) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    deleteAll(child);
+                }
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * @param from a commit.
+     * @param to another commit.
+     * @return map from each file whose blob differs between FROM and TO
+     *         to its blob ID in TO, or to null if TO lacks it. Subtrees
+     *         the two share are not read.
+     */
+    public Map<String, String> changedFiles(Commit from, Commit to) {
+        if (from.getTree() != null && to.getTree() != null) {
+            return getTrees().diff(from.getTree(), to.getTree());
+        }
+        TreeMap<String, String> result = new TreeMap<>();
+        for (String name : from.getBlobs().keySet()) {
+            if (!to.getBlobs().containsKey(name)) {
+                result.put(name, null);
+            }
+        }
+        to.getBlobs().forEach((name, id) -> {
+            if (!id.equals(from.getBlobs().get(name))) {
+                result.put(name, id);
+            }
+        });
+        return result;
+    }
+
     /**
      * @param fileName file name.
      */
@@ -472,8 +1247,7 @@ public class Repository implements Serializable {
         if (!head.getBlobs().containsKey(fileName)) {
             throw Utils.error("File does not exist in that commit.");
         } else {
-            Blob b = head.getBlobs().get(fileName);
-            Utils.writeContents(new File(b.getFileName()), b.getContents());
+            writeWorking(head.getBlobs().get(fileName), fileName);
         }
     }
 
@@ -484,8 +1258,7 @@ public class Repository implements Serializable {
     public void checkoutFileByID(String fileName, String id) {
         Commit c = getCommit(id);
         if (c.getBlobs().containsKey(fileName)) {
-            Blob b = c.getBlobs().get(fileName);
-            Utils.writeContents(new File(b.getFileName()), b.getContents());
+            writeWorking(c.getBlobs().get(fileName), fileName);
         } else {
             System.out.println("File does not exist in that commit.");
             System.exit(0);
@@ -494,33 +1267,23 @@ public class Repository implements Serializable {
 
     /**
      * @param dir dir.
-     * @return set of all files in the dir.
-     */
-    public HashSet<String> getAllFiles(File dir) {
-        HashSet<String> allFiles = new HashSet<>();
-        for (File f : dir.listFiles()) {
-            if (f.isDirectory() && !f.isHidden()) {
-                allFiles.addAll(getAllFiles(f));
-            } else if (f.isFile()) {
-                allFiles.add(f.getName());
-            }
-        }
-        return allFiles;
+     * @return set of all files in the dir that are not ignored.
+     */
+    public Set<String> getAllFiles(File dir) {
+        return new WorkTree(dir).files();
     }
 
     /**
-     * update the untracked set.
+     * @return names of the untracked files, scanning the working tree the
+     *         first time a command asks.
      */
-    public void updateUntracked() {
-        _untrackedFiles.clear();
-        var allFiles = getAllFiles(CommandLineTools.CWD_DIR);
-        var temp = new HashSet<>(allFiles);
-        for (String f : temp) {
-            if (_head.hasTracked(f) || _stage.contains(f)) {
-                allFiles.remove(f);
-            }
+    public Set<String> getUntracked() {
+        if (_untrackedFiles == null) {
+            _untrackedFiles = getAllFiles(CommandLineTools.CWD_DIR);
+            _untrackedFiles.removeIf(f -> _head.hasTracked(f)
+                                     || _stage.contains(f));
         }
-        _untrackedFiles.addAll(allFiles);
+        return _untrackedFiles;
     }
 
     /**
@@ -551,45 +1314,18 @@ public class Repository implements Serializable {
     /**
      * @param headID head commit id
      * @param fromID from's head commit id
-     * @return commit ID of the split point
+     * @return the split point, a latest common ancestor of the two
+     *         commits found on the commit graph, or null if they share
+     *         no history.
      */
     public Commit splitPoint(String headID, String fromID) {
-        Commit head = getCommit(headID);
-        Commit from = getCommit(fromID);
-        HashMap<String, Integer> head2Num = new HashMap<>();
-        HashMap<String, Integer> from2Num = new HashMap<>();
-        int i = 0;
-        while (head != null) {
-            head2Num.put(head.getID(), i);
-            if (head.getMergeFrom() != null) {
-                head2Num.put(head.getMergeFrom(), -1);
-            }
-            head = getCommit(head.getParent());
-            i++;
-        }
-        i = 0;
-        while (from != null) {
-            if (head2Num.containsKey(from.getMergeFrom())) {
-                String mergeID = from.getMergeFrom();
-                from2Num.put(mergeID, head2Num.get(mergeID));
-            } else if (head2Num.containsKey(from.getID())) {
-                from2Num.put(from.getID(), i);
-            }
-            if (from2Num.size() == 2) {
-                break;
-            }
-            from = getCommit(from.getParent());
-            i++;
-        }
-        i = Integer.MAX_VALUE;
-        String id = null;
-        for (String x : from2Num.keySet()) {
-            if (from2Num.get(x) < i) {
-                id = x;
-                i = from2Num.get(x);
-            }
+        CommitGraph graph = getCommitGraph();
+        int base = graph.mergeBase(graph.position(resolveID(headID)),
+                                   graph.position(resolveID(fromID)));
+        if (base == CommitGraph.NONE) {
+            return null;
         }
-        return getCommit(id);
+        return getCommit(graph.id(base));
     }
 
     /**
@@ -605,16 +1341,18 @@ public class Repository implements Serializable {
                 + "current branch.");
             System.exit(0);
         } else if (splitPoint.getID().equals(_head.getHeadID())) {
-            _head.updateHead(from.getHeadID());
-            checkoutByCommit(getCommit(_head.getHeadID()));
+            Commit target = getCommit(from.getHeadID());
+            checkoutByCommit(target);
+            _head.updateHead(target);
             System.out.println("Current branch fast-forwarded.");
             System.exit(0);
         }
         Commit fromHead = getCommit(from.getHeadID());
         map2Func(splitPoint, fromHead).forEach((fileName, func) -> func.run());
         String log = "Merged " + branch + " into " + _head.getName() + ".";
-        Commit commit = new Commit(getHeadCommit(),
-            fromHead, _head.getName(), log, _stage, _removedFiles);
+        Commit head = getHeadCommit();
+        Commit commit = new Commit(head, fromHead, _head.getName(), log,
+                                   stagedTree(head), getTrees());
         makeCommit(commit);
         if (_conflicts) {
             System.out.println("Encountered a merge conflict.");
@@ -634,9 +1372,10 @@ public class Repository implements Serializable {
         }
         merge += "=======\r\n";
         if (from.getBlobs().containsKey(fileName)) {
-            merge += from.getBlobs().get(fileName).getString();
+            merge += getObjects().getString(from.getBlobs().get(fileName));
         }
         merge += ">>>>>>>\r\n";
+        makeParents(f);
         Utils.writeContents(f, merge);
         add(fileName);
     }
@@ -647,9 +1386,7 @@ public class Repository implements Serializable {
      * @param from from commit
      */
     public void checkStage(String fileName, Commit from) {
-        File file = new File(fileName);
-        var overwrite = from.getBlobs().get(fileName).getContents();
-        Utils.writeContents(file, overwrite);
+        writeWorking(from.getBlobs().get(fileName), fileName);
         add(fileName);
     }
 
@@ -657,7 +1394,7 @@ public class Repository implements Serializable {
      * @param fileName file name
      */
     public void warnUnchecked(String fileName) {
-        if (_untrackedFiles.contains(fileName)) {
+        if (getUntracked().contains(fileName)) {
             System.out.println("There is an untracked file in the way;"
                 + " delete it, or add and commit it first.");
             System.exit(0);
@@ -672,15 +1409,14 @@ public class Repository implements Serializable {
      */
     public HashMap<String, Runnable> map2Func(Commit split, Commit from) {
         HashMap<String, Runnable> funcMap = new HashMap<>();
-        HashMap<String, Blob> sBLobs = split.getBlobs();
-        HashMap<String, Blob> fBlobs = from.getBlobs();
+        HashMap<String, String> sBLobs = split.getBlobs();
+        HashMap<String, String> fBlobs = from.getBlobs();
         for (String fileName : sBLobs.keySet()) {
             File f = new File(fileName);
+            String sID = sBLobs.get(fileName);
             if (!fBlobs.containsKey(fileName)) {
                 if (f.exists()) {
-                    var fContents = Utils.readContents(f);
-                    var sContents = sBLobs.get(fileName).getContents();
-                    if (Arrays.equals(fContents, sContents)) {
+                    if (sameAsWorking(fileName, sID)) {
                         funcMap.put(fileName, () -> remove(fileName));
                     } else {
                         funcMap.put(fileName, () -> conflict(fileName, from));
@@ -688,27 +1424,20 @@ public class Repository implements Serializable {
                     warnUnchecked(fileName);
                 }
             } else {
+                String fID = fBlobs.get(fileName);
                 if (f.exists()) {
-                    var contents = Utils.readContents(f);
-                    var fContents = fBlobs.get(fileName).getContents();
-                    var sContents = sBLobs.get(fileName).getContents();
-                    if (!Arrays.equals(fContents, sContents)
-                        && Arrays.equals(sContents, contents)) {
+                    boolean atSplit = sameAsWorking(fileName, sID);
+                    if (!fID.equals(sID) && atSplit) {
                         funcMap.put(fileName, () -> checkStage(fileName, from));
                         warnUnchecked(fileName);
-                    } else if (!Arrays.equals(contents, sContents)
-                            && !Arrays.equals(fContents, sContents)
-                            && !Arrays.equals(contents, fContents)) {
-                        funcMap.put(fileName, () -> conflict(fileName, from));
-                        warnUnchecked(fileName);
-                    }
-                } else {
-                    var fContents = fBlobs.get(fileName).getContents();
-                    var sContents = sBLobs.get(fileName).getContents();
-                    if (!Arrays.equals(fContents, sContents)) {
+                    } else if (!atSplit && !fID.equals(sID)
+                            && !sameAsWorking(fileName, fID)) {
                         funcMap.put(fileName, () -> conflict(fileName, from));
                         warnUnchecked(fileName);
                     }
+                } else if (!fID.equals(sID)) {
+                    funcMap.put(fileName, () -> conflict(fileName, from));
+                    warnUnchecked(fileName);
                 }
             }
         }
@@ -718,13 +1447,9 @@ public class Repository implements Serializable {
                 if (!file.exists()) {
                     funcMap.put(fileName, () -> checkStage(fileName, from));
                     warnUnchecked(fileName);
-                } else {
-                    var contents = Utils.readContents(file);
-                    var fContents = fBlobs.get(fileName).getContents();
-                    if (!Arrays.equals(contents, fContents)) {
-                        funcMap.put(fileName, () -> conflict(fileName, from));
-                        warnUnchecked(fileName);
-                    }
+                } else if (!sameAsWorking(fileName, fBlobs.get(fileName))) {
+                    funcMap.put(fileName, () -> conflict(fileName, from));
+                    warnUnchecked(fileName);
                 }
             }
         }
@@ -1,39 +1,92 @@
 package gitlet;
 
 import java.io.File;
-import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 
 /**
  * @author Zheyuan Hu
  */
-public class Stage implements Serializable {
-    /** serial ID. */
-    private static final long serialVersionUID = 2337317767252720374L;
+public class Stage {
     /**
-     * map mapping file name to blob. Contains all staged files.
+     * map mapping file name to blob ID. Contains all staged files. The
+     * contents themselves live in the object store.
      */
-    private HashMap<String, Blob> _stagingArea;
+    private HashMap<String, String> _stagingArea;
+    /** files staged for removal. */
+    private HashSet<String> _removed;
+    /** file the stage is kept in. */
+    private File _file;
+    /** contents of that file as last read or written. */
+    private String _savedText = "";
 
     /**
-     * constructor.
+     * constructor. Loads the stage kept in FILE, if any. Each line is
+     * either "+ ID NAME" for a staged file or "- NAME" for a removal.
+     * @param file file the stage is kept in.
      */
-    public Stage() {
+    public Stage(File file) {
         _stagingArea = new HashMap<>();
+        _removed = new HashSet<>();
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        _savedText = Utils.readContentsAsString(file);
+        for (String line : _savedText.split("\n")) {
+            if (line.startsWith("+ ")) {
+                int split = line.indexOf(' ', 2);
+                _stagingArea.put(line.substring(split + 1),
+                    line.substring(2, split));
+            } else if (line.startsWith("- ")) {
+                _removed.add(line.substring(2));
+            }
+        }
+    }
+
+    /**
+     * @return the stage's lines, sorted so unchanged stages compare equal.
+     */
+    private String toText() {
+        StringBuilder text = new StringBuilder();
+        _stagingArea.keySet().stream().sorted().forEach(name -> text
+            .append("+ ").append(_stagingArea.get(name)).append(' ')
+            .append(name).append('\n'));
+        _removed.stream().sorted().forEach(name -> text
+            .append("- ").append(name).append('\n'));
+        return text.toString();
+    }
+
+    /**
+     * write the stage back if this command changed it.
+     */
+    public void save() {
+        String text = toText();
+        if (!text.equals(_savedText)) {
+            Utils.writeContents(_file, text);
+            _savedText = text;
+        }
+    }
+
+    /**
+     * @return files staged for removal.
+     */
+    public HashSet<String> getRemoved() {
+        return _removed;
     }
 
     /** encapsulate hashmap's get function.
      * @param s key.
-     * @return get
+     * @return blob ID of the staged file.
     **/
-    public Blob get(String s) {
+    public String get(String s) {
         return _stagingArea.getOrDefault(s, null);
     }
 
     /**
      * @return the hashmap.
     **/
-    public HashMap<String, Blob> getAll() {
+    public HashMap<String, String> getAll() {
         return _stagingArea;
     }
 
@@ -52,37 +105,15 @@ public class Stage implements Serializable {
         return _stagingArea.isEmpty();
     }
 
-    /** add a file to the staging area.
+    /** add a file to the staging area, storing its contents unless the
+     * store already has them.
      * @param fileName file name.
+     * @param id blob ID of its contents.
+     * @param store object store to keep the contents in.
     **/
-    public void add(String fileName) {
-        Blob b = fileToBlob(fileName);
-        _stagingArea.put(fileName, b);
-    }
-
-    /**
-     * convert a file to a blob.
-     * @param fileName file name.
-     * @return blob.
-     */
-    public Blob fileToBlob(String fileName) {
-        File f = new File(fileName);
-        File copy = Utils.join(CommandLineTools.STAGE_DIR, fileName);
-        Object content = Utils.readContents(f);
-        Utils.writeContents(copy, content);
-        Blob blob = new Blob(copy.getName());
-        return blob;
-    }
-
-    /**
-     * update the content of a file.
-     * @param fileName file name.
-     */
-    public void updateFile(String fileName) {
-        File f = new File(fileName);
-        File staged = Utils.join(CommandLineTools.STAGE_DIR, fileName);
-        Object contents = Utils.readContents(f);
-        Utils.writeContents(staged, contents);
+    public void add(String fileName, String id, ObjectStore store) {
+        store.putFile(id, new File(fileName));
+        _stagingArea.put(fileName, id);
     }
 
     /**
@@ -90,17 +121,11 @@ public class Stage implements Serializable {
      * @param fileName file name.
      */
     public void remove(String fileName) {
-        File removeFile = Utils.join(CommandLineTools.STAGE_DIR, fileName);
-        removeFile.delete();
         _stagingArea.remove(fileName);
     }
 
-    /** clear the stage and remove files from the staging dir. **/
+    /** clear the stage, except for removals. **/
     public void clear() {
-        for (String fileName : _stagingArea.keySet()) {
-            File f = Utils.join(CommandLineTools.STAGE_DIR, fileName);
-            f.delete();
-        }
         _stagingArea.clear();
     }
 }
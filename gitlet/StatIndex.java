@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Cache of the blob IDs of working files, keyed by the files' metadata.
+ * For every file whose ID has been computed it records the size, the
+ * modification time, the file key (device, inode and change time where
+ * the platform has them) and the ID; while all three still match, the ID
+ * is returned without reading the file. Kept in .gitlet/index, one line
+ * per file: "SIZE MTIME KEY ID NAME".
+ * A file changed twice within one tick of the filesystem clock can keep
+ * its size and mtime, so an entry whose mtime is not older than the index
+ * file itself is "racy" and the file is hashed again.
+ * Lookups may run on many threads at once, as when add hashes files in
+ * parallel.
+ * @author Zheyuan Hu
+ */
+public class StatIndex {
+    /** key recorded when the platform gives files no key. */
+    private static final String NO_KEY = "-";
+    /** attributes read on platforms with a unix view. */
+    private static final String UNIX_ATTRIBUTES = "unix:dev,ino,ctime";
+    /** whether the unix attribute view is available. */
+    private static boolean _unix = true;
+    /** file the index is kept in. */
+    private final File _file;
+    /** entries by file name. */
+    private final ConcurrentHashMap<String, Entry> _entries =
+        new ConcurrentHashMap<>();
+    /** modification time of the index file, in nanoseconds. */
+    private long _written = Long.MIN_VALUE;
+    /** whether an entry was added, changed or dropped. */
+    private volatile boolean _changed;
+    /** number of lookups answered from the metadata alone. */
+    private final AtomicInteger _hits = new AtomicInteger();
+    /** number of lookups that had to read and hash the file. */
+    private final AtomicInteger _misses = new AtomicInteger();
+
+    /** Metadata and blob ID of one working file. */
+    private static class Entry {
+        /** file size. */
+        private final long _size;
+        /** modification time in nanoseconds. */
+        private final long _mtime;
+        /** file key. */
+        private final String _key;
+        /** blob ID. */
+        private final String _id;
+
+        /**
+         * constructor.
+         * @param size file size.
+         * @param mtime modification time in nanoseconds.
+         * @param key file key.
+         * @param id blob ID.
+         */
+        Entry(long size, long mtime, String key, String id) {
+            _size = size;
+            _mtime = mtime;
+            _key = key;
+            _id = id;
+        }
+
+        /**
+         * @param attrs current attributes of the file.
+         * @return whether ATTRS match the recorded ones.
+         */
+        boolean matches(Stat attrs) {
+            return attrs._size == _size && attrs._mtime == _mtime
+                && attrs._key.equals(_key);
+        }
+    }
+
+    /** The attributes of a working file that the index compares. */
+    private static class Stat {
+        /** file size. */
+        private final long _size;
+        /** modification time in nanoseconds. */
+        private final long _mtime;
+        /** file key. */
+        private final String _key;
+
+        /**
+         * constructor.
+         * @param size file size.
+         * @param mtime modification time in nanoseconds.
+         * @param key file key.
+         */
+        Stat(long size, long mtime, String key) {
+            _size = size;
+            _mtime = mtime;
+            _key = key;
+        }
+    }
+
+    /**
+     * constructor. Loads the index kept in FILE, if any.
+     * @param file file the index is kept in.
+     */
+    public StatIndex(File file) {
+        _file = file;
+        if (!file.isFile()) {
+            return;
+        }
+        _written = stat(file.getPath())._mtime;
+        try {
+            for (String line : Utils.readContentsAsString(file).split("\n")) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split(" ", 5);
+                _entries.put(fields[4], new Entry(Long.parseLong(fields[0]),
+                    Long.parseLong(fields[1]), fields[2], fields[3]));
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            _entries.clear();
+            _changed = true;
+        }
+    }
+
+    /**
+     * @param name file name.
+     * @return attributes of the file, or null if it does not exist.
+     */
+    private static Stat stat(String name) {
+        Path path = new File(name).toPath();
+        try {
+            BasicFileAttributes attrs =
+                Files.readAttributes(path, BasicFileAttributes.class);
+            long mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            String key = NO_KEY;
+            if (_unix) {
+                key = unixKey(path);
+            }
+            if (key.equals(NO_KEY) && attrs.fileKey() != null) {
+                key = attrs.fileKey().toString().replace(' ', '_');
+            }
+            return new Stat(attrs.size(), mtime, key);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /**
+     * @param path a file.
+     * @return its device, inode and change time, or NO_KEY if the platform
+     *         has no unix attribute view.
+     * @throws IOException if the file cannot be read.
+     */
+    private static String unixKey(Path path) throws IOException {
+        try {
+            Map<String, Object> attrs =
+                Files.readAttributes(path, UNIX_ATTRIBUTES);
+            FileTime ctime = (FileTime) attrs.get("ctime");
+            return attrs.get("dev") + ":" + attrs.get("ino") + ":"
+                + ctime.to(TimeUnit.NANOSECONDS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            _unix = false;
+            return NO_KEY;
+        }
+    }
+
+    /**
+     * @param name name of a working file.
+     * @return the blob ID of the file's current contents, hashing the
+     *         file only if its metadata changed since it was last hashed,
+     *         or null if it does not exist.
+     */
+    public String id(String name) {
+        return id(name, file -> new Blob(file).getID());
+    }
+
+    /**
+     * @param name name of a working file.
+     * @return the blob ID recorded for the file if its metadata still
+     *         matches, or null if the file would have to be read.
+     */
+    public String cached(String name) {
+        Entry entry = _entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        Stat attrs = stat(name);
+        if (attrs != null && entry.matches(attrs)
+            && entry._mtime < _written) {
+            _hits.incrementAndGet();
+            return entry._id;
+        }
+        return null;
+    }
+
+    /**
+     * @param name name of a working file.
+     * @param hash function from a file name to the blob ID of the file,
+     *             called only if the file must be read.
+     * @return the blob ID of the file's current contents, or null if it
+     *         does not exist.
+     */
+    public String id(String name, Function<String, String> hash) {
+        Stat attrs = stat(name);
+        if (attrs == null) {
+            if (_entries.remove(name) != null) {
+                _changed = true;
+            }
+            return null;
+        }
+        Entry entry = _entries.get(name);
+        if (entry != null && entry.matches(attrs) && entry._mtime < _written) {
+            _hits.incrementAndGet();
+            return entry._id;
+        }
+        _misses.incrementAndGet();
+        String id = hash.apply(name);
+        put(name, attrs, id);
+        return id;
+    }
+
+    /**
+     * record that the working file NAME now holds the blob ID, as after
+     * hashing it for add or writing it for checkout.
+     * @param name file name.
+     * @param id blob ID of its contents.
+     */
+    public void record(String name, String id) {
+        Stat attrs = stat(name);
+        if (attrs != null) {
+            put(name, attrs, id);
+        }
+    }
+
+    /**
+     * @param name file name.
+     * @param attrs its attributes.
+     * @param id its blob ID.
+     */
+    private void put(String name, Stat attrs, String id) {
+        _entries.put(name, new Entry(attrs._size, attrs._mtime, attrs._key,
+                                     id));
+        _changed = true;
+    }
+
+    /**
+     * @return number of lookups answered from the metadata alone.
+     */
+    public int getHits() {
+        return _hits.get();
+    }
+
+    /**
+     * @return number of lookups that read and hashed the file.
+     */
+    public int getMisses() {
+        return _misses.get();
+    }
+
+    /**
+     * write the index back if this command changed it.
+     */
+    public void save() {
+        if (!_changed) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        _entries.forEach((name, e) -> text.append(e._size).append(' ')
+            .append(e._mtime).append(' ').append(e._key).append(' ')
+            .append(e._id).append(' ').append(name).append('\n'));
+        Utils.writeContents(_file, text.toString());
+        _changed = false;
+    }
+}
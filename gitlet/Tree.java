@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One directory of a commit's files: the blob ID of each file in it and
+ * the tree ID of each subdirectory. A tree is encoded as
+ * <pre>
+ *   magic "GLT" | version | entry count (varint), then for each entry in
+ *   name order: kind ('b' blob or 't' tree) | name (varint length +
+ *   UTF-8) | ID (20 raw bytes)
+ * </pre>
+ * and its ID is the SHA-1 of that encoding, so a directory whose contents
+ * did not change keeps its ID and is shared by every commit holding it.
+ * @author Zheyuan Hu
+ */
+public class Tree {
+    /** leading bytes of every encoded tree. */
+    private static final byte[] MAGIC = {'G', 'L', 'T'};
+    /** current format version. */
+    static final int VERSION = 1;
+    /** kind byte of a file entry. */
+    private static final int BLOB = 'b';
+    /** kind byte of a subdirectory entry. */
+    private static final int TREE = 't';
+    /** ID of the tree with no entries, which is never stored. */
+    static final String EMPTY_ID = new Tree().getID();
+    /** approximate heap overhead of an entry, in bytes. */
+    private static final int ENTRY_OVERHEAD = 96;
+    /** map from file name to blob ID. */
+    private final TreeMap<String, String> _blobs;
+    /** map from subdirectory name to tree ID. */
+    private final TreeMap<String, String> _trees;
+
+    /**
+     * constructor for an empty tree.
+     */
+    public Tree() {
+        this(new TreeMap<>(), new TreeMap<>());
+    }
+
+    /**
+     * constructor.
+     * @param blobs map from file name to blob ID.
+     * @param trees map from subdirectory name to tree ID.
+     */
+    Tree(TreeMap<String, String> blobs, TreeMap<String, String> trees) {
+        _blobs = blobs;
+        _trees = trees;
+    }
+
+    /**
+     * @return a copy of this tree that may be changed.
+     */
+    public Tree copy() {
+        return new Tree(new TreeMap<>(_blobs), new TreeMap<>(_trees));
+    }
+
+    /**
+     * @return map from file name to blob ID.
+     */
+    public TreeMap<String, String> getBlobs() {
+        return _blobs;
+    }
+
+    /**
+     * @return map from subdirectory name to tree ID.
+     */
+    public TreeMap<String, String> getTrees() {
+        return _trees;
+    }
+
+    /**
+     * @return whether the tree has no entries.
+     */
+    public boolean isEmpty() {
+        return _blobs.isEmpty() && _trees.isEmpty();
+    }
+
+    /**
+     * @return the tree's ID.
+     */
+    public String getID() {
+        return Utils.sha1(encode());
+    }
+
+    /**
+     * @return rough estimate of this tree's heap footprint in bytes.
+     */
+    public long estimatedSize() {
+        return (long) (_blobs.size() + _trees.size()) * ENTRY_OVERHEAD;
+    }
+
+    /**
+     * @return the encoded tree.
+     */
+    public byte[] encode() {
+        TreeMap<String, Integer> kinds = new TreeMap<>();
+        _blobs.keySet().forEach(name -> kinds.put(name, BLOB));
+        for (String name : _trees.keySet()) {
+            if (kinds.put(name, TREE) != null) {
+                throw Utils.error("%s is both a file and a directory.",
+                    name);
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(VERSION);
+        CommitCodec.writeVarint(out, kinds.size());
+        for (Map.Entry<String, Integer> entry : kinds.entrySet()) {
+            String name = entry.getKey();
+            out.write(entry.getValue());
+            CommitCodec.writeString(out, name);
+            String id = entry.getValue() == BLOB
+                ? _blobs.get(name) : _trees.get(name);
+            out.write(Utils.hexToBytes(id), 0, CommitIndex.RAW_LENGTH);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data an encoded tree.
+     * @return the tree.
+     */
+    public static Tree decode(byte[] data) {
+        try {
+            DataInputStream in =
+                new DataInputStream(new ByteArrayInputStream(data));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (magic[0] != MAGIC[0] || magic[1] != MAGIC[1]
+                || magic[2] != MAGIC[2]) {
+                throw Utils.error("Not a tree object.");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw Utils.error("Unsupported tree format version %d.",
+                    version);
+            }
+            Tree tree = new Tree();
+            int count = CommitCodec.readVarint(in);
+            for (int i = 0; i < count; i++) {
+                int kind = in.readUnsignedByte();
+                String name = CommitCodec.readString(in);
+                byte[] raw = new byte[CommitIndex.RAW_LENGTH];
+                in.readFully(raw);
+                if (kind == BLOB) {
+                    tree._blobs.put(name, Utils.bytesToHex(raw));
+                } else {
+                    tree._trees.put(name, Utils.bytesToHex(raw));
+                }
+            }
+            return tree;
+        } catch (IOException excp) {
+            throw Utils.error("Corrupt tree: %s", excp.getMessage());
+        }
+    }
+}
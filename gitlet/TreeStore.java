@@ -0,0 +1,250 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reads and writes the trees of a repo, which live in its object store
+ * beside the blobs. A new commit's tree is built from its parent's by
+ * rewriting only the trees on the paths of the changed files; every other
+ * subdirectory keeps its parent's tree ID. Likewise diffs and copies
+ * between repos descend only into subtrees whose IDs differ. Decoded
+ * trees, and the file maps of whole commits flattened from them, are
+ * kept in bounded caches.
+ * @author Zheyuan Hu
+ */
+public class TreeStore {
+    /** bound on the memory held by decoded trees, in bytes. */
+    static final long CACHE_BYTES = 8L << 20;
+    /** bound on the memory held by flattened file maps, in bytes. */
+    static final long FLAT_CACHE_BYTES = 16L << 20;
+    /** approximate heap overhead of a flattened entry, in bytes. */
+    private static final int FLAT_ENTRY_OVERHEAD = 128;
+    /** separator of the parts of a path. */
+    static final char SEPARATOR = '/';
+    /** the store the trees live in. */
+    private final ObjectStore _objects;
+    /** decoded trees. */
+    private final LruCache<Tree> _cache =
+        new LruCache<>(CACHE_BYTES, Tree::estimatedSize);
+    /** file maps of root trees, by tree ID. */
+    private final LruCache<HashMap<String, String>> _flatCache =
+        new LruCache<>(FLAT_CACHE_BYTES, TreeStore::flatSize);
+
+    /**
+     * constructor.
+     * @param objects the store the trees live in.
+     */
+    public TreeStore(ObjectStore objects) {
+        _objects = objects;
+    }
+
+    /**
+     * @param id tree ID.
+     * @return the tree.
+     */
+    public Tree get(String id) {
+        if (id.equals(Tree.EMPTY_ID)) {
+            return new Tree();
+        }
+        Tree tree = _cache.get(id);
+        if (tree == null) {
+            tree = Tree.decode(_objects.get(id));
+            _cache.put(id, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * store TREE unless it is empty or already stored.
+     * @param tree tree.
+     * @return its ID.
+     */
+    public String put(Tree tree) {
+        byte[] data = tree.encode();
+        String id = Utils.sha1(data);
+        if (!tree.isEmpty()) {
+            _objects.put(id, data);
+            _cache.put(id, tree);
+        }
+        return id;
+    }
+
+    /**
+     * @param root ID of a tree.
+     * @param changes map from path to new blob ID, or to null for a path
+     *                to remove.
+     * @return ID of the tree ROOT becomes with CHANGES applied. Only trees
+     *         on the changed paths are written. A file added where there
+     *         was a directory replaces it, and a directory given files
+     *         where there was a file replaces that; a path that CHANGES
+     *         makes both a file and a directory is an error.
+     */
+    public String update(String root, Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return root;
+        }
+        Tree tree = get(root).copy();
+        HashMap<String, HashMap<String, String>> below = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int split = path.indexOf(SEPARATOR);
+            if (split < 0 && change.getValue() == null) {
+                tree.getBlobs().remove(path);
+            } else if (split < 0) {
+                tree.getBlobs().put(path, change.getValue());
+                tree.getTrees().remove(path);
+            } else {
+                below.computeIfAbsent(path.substring(0, split),
+                                      k -> new HashMap<>())
+                    .put(path.substring(split + 1), change.getValue());
+            }
+        }
+        for (Map.Entry<String, HashMap<String, String>> dir
+                 : below.entrySet()) {
+            String name = dir.getKey();
+            boolean isFile = changes.get(name) != null;
+            String sub = update(isFile ? Tree.EMPTY_ID
+                                : tree.getTrees().getOrDefault(name,
+                                                               Tree.EMPTY_ID),
+                                dir.getValue());
+            if (sub.equals(Tree.EMPTY_ID)) {
+                tree.getTrees().remove(name);
+            } else if (isFile) {
+                throw Utils.error("%s is both a file and a directory.",
+                    name);
+            } else {
+                tree.getBlobs().remove(name);
+                tree.getTrees().put(name, sub);
+            }
+        }
+        return put(tree);
+    }
+
+    /**
+     * @param root ID of a tree.
+     * @return map from the path of every file under ROOT to its blob ID.
+     *         The map may be shared with later callers, so it must not
+     *         be changed.
+     */
+    public HashMap<String, String> flatten(String root) {
+        HashMap<String, String> result = _flatCache.get(root);
+        if (result == null) {
+            result = new HashMap<>();
+            flatten(root, "", result);
+            _flatCache.put(root, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param files map from path to blob ID.
+     * @return rough estimate of its heap footprint in bytes.
+     */
+    private static long flatSize(HashMap<String, String> files) {
+        long size = 0;
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            size += FLAT_ENTRY_OVERHEAD + file.getKey().length()
+                + file.getValue().length();
+        }
+        return size;
+    }
+
+    /**
+     * add the files under the tree ID to RESULT.
+     * @param id tree ID.
+     * @param prefix path of the tree, ending in a separator unless empty.
+     * @param result map from path to blob ID.
+     */
+    private void flatten(String id, String prefix,
+                         Map<String, String> result) {
+        Tree tree = get(id);
+        tree.getBlobs().forEach((name, blob) -> result.put(prefix + name,
+                                                            blob));
+        tree.getTrees().forEach((name, sub) -> flatten(sub,
+            prefix + name + SEPARATOR, result));
+    }
+
+    /**
+     * @param from ID of a tree.
+     * @param to ID of another tree.
+     * @return map from each path whose blob differs between FROM and TO
+     *         to its blob ID in TO, or to null if TO lacks it. Subtrees
+     *         with equal IDs are not read.
+     */
+    public TreeMap<String, String> diff(String from, String to) {
+        TreeMap<String, String> result = new TreeMap<>();
+        diff(from, to, "", result);
+        return result;
+    }
+
+    /**
+     * add the differences between two trees to RESULT.
+     * @param from ID of a tree, or null.
+     * @param to ID of another tree, or null.
+     * @param prefix path of the trees, ending in a separator unless empty.
+     * @param result map from path to blob ID in TO, or null.
+     */
+    private void diff(String from, String to, String prefix,
+                      Map<String, String> result) {
+        if (from != null && from.equals(to)) {
+            return;
+        }
+        Tree a = from == null ? new Tree() : get(from);
+        Tree b = to == null ? new Tree() : get(to);
+        for (Map.Entry<String, String> file : a.getBlobs().entrySet()) {
+            if (!b.getBlobs().containsKey(file.getKey())) {
+                result.put(prefix + file.getKey(), null);
+            }
+        }
+        for (Map.Entry<String, String> file : b.getBlobs().entrySet()) {
+            if (!file.getValue().equals(a.getBlobs().get(file.getKey()))) {
+                result.put(prefix + file.getKey(), file.getValue());
+            }
+        }
+        TreeMap<String, String> dirs = new TreeMap<>(a.getTrees());
+        b.getTrees().forEach(dirs::putIfAbsent);
+        for (String name : dirs.keySet()) {
+            diff(a.getTrees().get(name), b.getTrees().get(name),
+                 prefix + name + SEPARATOR, result);
+        }
+    }
+
+    /**
+     * copy the tree ID, and the subtrees and blobs under it, into another
+     * repo's store. A tree is copied after everything under it, so a tree
+     * already in the destination is complete and is not descended into.
+     * @param id tree ID.
+     * @param other destination.
+     */
+    public void copyTo(String id, TreeStore other) {
+        if (id.equals(Tree.EMPTY_ID) || other._objects.contains(id)) {
+            return;
+        }
+        Tree tree = get(id);
+        for (String blob : tree.getBlobs().values()) {
+            _objects.copyTo(blob, other._objects);
+        }
+        for (String sub : tree.getTrees().values()) {
+            copyTo(sub, other);
+        }
+        other.put(tree);
+    }
+
+    /**
+     * add the ID of the tree ID and of every tree under it to FOUND,
+     * skipping trees already there.
+     * @param id tree ID.
+     * @param found IDs of trees.
+     */
+    public void collect(String id, Set<String> found) {
+        if (id.equals(Tree.EMPTY_ID) || !found.add(id)) {
+            return;
+        }
+        for (String sub : get(id).getTrees().values()) {
+            collect(sub, found);
+        }
+    }
+}
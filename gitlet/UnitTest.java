@@ -5,6 +5,7 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.List;
 
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
@@ -30,6 +31,265 @@ public class UnitTest {
             .stream().forEach(f -> System.out.println(f));
     }
 
+    @Test
+    public void testLruCacheEvictsBySize() {
+        LruCache<String> cache = new LruCache<>(10, v -> v.length());
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals("aaaa", cache.get("a"));
+        cache.put("c", "cccc");
+        assertNull(cache.get("b"));
+        assertEquals("aaaa", cache.get("a"));
+        assertEquals(8, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testLruCacheChargesWeightAtPut() {
+        LruCache<StringBuilder> cache =
+            new LruCache<>(10, v -> v.length());
+        StringBuilder grows = new StringBuilder("aaaa");
+        cache.put("a", grows);
+        grows.append("aaaa");
+        cache.remove("a");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCommitIndexPrefixes() throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("index").toFile();
+        CommitIndex index = new CommitIndex(dir);
+        String a = Utils.sha1("a");
+        String b = Utils.sha1("b");
+        index.add(a);
+        index.compact();
+        index.add(b);
+        CommitIndex reloaded = new CommitIndex(dir);
+        assertEquals(2, reloaded.size());
+        assertTrue(reloaded.contains(a));
+        assertEquals(List.of(a), reloaded.matches(a.substring(0, 6), 2));
+        assertEquals(2, reloaded.matches("", 2).size());
+        assertTrue(reloaded.matches("xyz", 2).isEmpty());
+    }
+
+    @Test
+    public void testCommitCodecRoundTrip() {
+        Commit commit = new Commit("master", "initial commit");
+        Commit decoded = CommitCodec.decode(CommitCodec.encode(commit));
+        assertEquals(commit.getID(), decoded.getID());
+        assertEquals(commit.getTimestamp(), decoded.getTimestamp());
+        assertEquals(commit.getLog(), decoded.getLog());
+        assertNull(decoded.getParent());
+        assertTrue(decoded.getBlobs().isEmpty());
+    }
+
+    @Test
+    public void testTreesShareUnchangedDirectories()
+        throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("trees").toFile();
+        TreeStore trees = new TreeStore(
+            new ObjectStore(dir, new Packs(new File(dir, "packs")), 0));
+        String x = Utils.sha1("x");
+        String y = Utils.sha1("y");
+        java.util.HashMap<String, String> files = new java.util.HashMap<>();
+        files.put("a.txt", x);
+        files.put("src/b.txt", x);
+        files.put("doc/c.txt", y);
+        String first = trees.update(Tree.EMPTY_ID, files);
+        assertEquals(files, trees.flatten(first));
+        java.util.HashMap<String, String> changes =
+            new java.util.HashMap<>();
+        changes.put("src/b.txt", y);
+        changes.put("a.txt", null);
+        String second = trees.update(first, changes);
+        assertEquals(trees.get(first).getTrees().get("doc"),
+                     trees.get(second).getTrees().get("doc"));
+        assertEquals(changes, trees.diff(first, second));
+    }
+
+    @Test
+    public void testFileReplacesDirectoryInTree() throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("trees").toFile();
+        TreeStore trees = new TreeStore(
+            new ObjectStore(dir, new Packs(new File(dir, "packs")), 0));
+        String x = Utils.sha1("x");
+        java.util.HashMap<String, String> files = new java.util.HashMap<>();
+        files.put("src/b.txt", x);
+        String first = trees.update(Tree.EMPTY_ID, files);
+        java.util.HashMap<String, String> changes =
+            new java.util.HashMap<>();
+        changes.put("src", x);
+        changes.put("src/b.txt", null);
+        String second = trees.update(first, changes);
+        assertEquals(java.util.Map.of("src", x), trees.flatten(second));
+        changes.put("src/b.txt", x);
+        try {
+            trees.update(first, changes);
+            fail("a path was both a file and a directory");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().startsWith("src"));
+        }
+    }
+
+    @Test
+    public void testDeltaRoundTrip() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes();
+        byte[] target = text.toString().replace("line 250\n", "edited\n")
+            .getBytes();
+        byte[] delta = Delta.encode(base, target);
+        assertTrue(delta.length < target.length / 10);
+        assertArrayEquals(target, Delta.apply(base, delta, 0));
+        assertEquals(target.length, Delta.targetSize(delta, 0));
+    }
+
+    @Test
+    public void testObjectFileCompression() throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("objects").toFile();
+        byte[] data = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa".repeat(100)
+            .getBytes();
+        File raw = new File(dir, "raw");
+        File deflated = new File(dir, "deflated");
+        ObjectStore.writeFile(raw, data, 0);
+        ObjectStore.writeFile(deflated, data, 9);
+        assertEquals(data.length + 1, raw.length());
+        assertTrue(deflated.length() < data.length / 10);
+        assertArrayEquals(data, ObjectStore.readFile(raw));
+        assertArrayEquals(data, ObjectStore.readFile(deflated));
+        try (java.io.DataInputStream in = new java.io.DataInputStream(
+                 new java.io.FileInputStream(deflated))) {
+            assertEquals(ObjectStore.SIZED, in.read());
+            assertEquals(data.length, in.readLong());
+        }
+        raw.delete();
+        deflated.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testStatIndexSkipsUnchangedFiles() throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("index").toFile();
+        File work = new File(dir, "f.txt");
+        File indexFile = new File(dir, "index");
+        Utils.writeContents(work, "hello");
+        StatIndex index = new StatIndex(indexFile);
+        String id = index.id(work.getPath());
+        index.save();
+        indexFile.setLastModified(System.currentTimeMillis() + 2000);
+        index = new StatIndex(indexFile);
+        assertEquals(id, index.id(work.getPath()));
+        assertEquals(1, index.getHits());
+        Utils.writeContents(work, "hello, world");
+        assertNotEquals(id, index.id(work.getPath()));
+        assertEquals(1, index.getMisses());
+        work.delete();
+        indexFile.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testCommitGraphMergeBase() throws java.io.IOException {
+        File dir = java.nio.file.Files.createTempDirectory("graph").toFile();
+        String time = new Commit("master", "").getTimestamp();
+        String[] ids = new String[5];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Utils.sha1("commit " + i);
+        }
+        CommitGraph graph = new CommitGraph(dir);
+        assertFalse(graph.add(new CommitHeader(ids[1], ids[0], null, time,
+                                               "", "")));
+        graph.add(new CommitHeader(ids[0], null, null, time, "", ""));
+        graph.add(new CommitHeader(ids[1], ids[0], null, time, "", ""));
+        graph.add(new CommitHeader(ids[2], ids[0], null, time, "", ""));
+        graph.add(new CommitHeader(ids[3], ids[1], ids[2], time, "", ""));
+        graph.add(new CommitHeader(ids[4], ids[2], null, time, "", ""));
+        graph = new CommitGraph(dir);
+        assertEquals(5, graph.size());
+        assertEquals(3, graph.generation(graph.position(ids[3])));
+        assertTrue(graph.isAncestor(graph.position(ids[0]),
+                                    graph.position(ids[3])));
+        assertFalse(graph.isAncestor(graph.position(ids[4]),
+                                     graph.position(ids[3])));
+        assertEquals(ids[2], graph.id(graph.mergeBase(
+            graph.position(ids[3]), graph.position(ids[4]))));
+        new File(dir, "commit-graph").delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testCrissCrossMergeBases() {
+        CommitGraph graph = new CommitGraph();
+        int none = CommitGraph.NONE;
+        graph.add(Utils.sha1("0"), none, none, 0);
+        graph.add(Utils.sha1("1"), 0, none, 1);
+        graph.add(Utils.sha1("2"), 0, none, 2);
+        graph.add(Utils.sha1("3"), 1, 2, 3);
+        graph.add(Utils.sha1("4"), 2, 1, 4);
+        graph.add(Utils.sha1("5"), 3, none, 5);
+        graph.add(Utils.sha1("6"), 4, none, 6);
+        List<Integer> bases = graph.mergeBases(5, 6);
+        bases.sort(null);
+        assertEquals(List.of(1, 2), bases);
+        assertEquals(2, graph.mergeBase(5, 6));
+        assertEquals(List.of(3), graph.mergeBases(5, 3));
+    }
+
+    @Test
+    public void testBitmapSetOperations() {
+        Bitmap a = new Bitmap();
+        Bitmap b = new Bitmap();
+        for (int i = 0; i < 10000; i++) {
+            a.add(i);
+        }
+        a.add(200000);
+        for (int i = 0; i < 10000; i += 2) {
+            b.add(i);
+        }
+        a.andNot(Bitmap.fromBytes(b.toBytes()));
+        assertEquals(5001, a.cardinality());
+        assertTrue(a.contains(9999));
+        assertFalse(a.contains(9998));
+        assertTrue(a.contains(200000));
+        b.or(a);
+        assertEquals(10001, b.cardinality());
+        int[] last = {-1};
+        b.forEach(v -> {
+            assertTrue(v > last[0]);
+            last[0] = v;
+        });
+    }
+
+    @Test
+    public void testChunksSurviveAnInsertion() throws java.io.IOException {
+        byte[] data = new byte[12 << 20];
+        new java.util.Random(7).nextBytes(data);
+        byte[] edited = new byte[data.length + 5];
+        System.arraycopy(data, 0, edited, 0, 6 << 20);
+        System.arraycopy(data, 6 << 20, edited, (6 << 20) + 5,
+                         data.length - (6 << 20));
+        java.util.HashSet<String> before = new java.util.HashSet<>();
+        Chunker chunker = new Chunker(new java.io.ByteArrayInputStream(data));
+        int total = 0;
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            assertTrue(c.length <= Chunker.MAX_CHUNK);
+            before.add(Utils.sha1(c));
+            total += c.length;
+        }
+        assertEquals(data.length, total);
+        int fresh = 0;
+        chunker = new Chunker(new java.io.ByteArrayInputStream(edited));
+        for (byte[] c = chunker.next(); c != null; c = chunker.next()) {
+            if (!before.contains(Utils.sha1(c))) {
+                fresh++;
+            }
+        }
+        assertTrue(fresh <= 2);
+    }
+
     /** A dummy test to avoid complaint. */
     @Test
     public void placeholderTest() {
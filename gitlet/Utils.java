@@ -15,7 +15,6 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -43,13 +42,7 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            String temp = result.toString();
-            result.close();
-            return temp;
+            return bytesToHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
@@ -61,6 +54,30 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** The lower-case hexadecimal digits, indexed by value. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns the lower-case hexadecimal numeral for the bytes in RAW. */
+    static String bytesToHex(byte[] raw) {
+        char[] result = new char[raw.length * 2];
+        for (int i = 0; i < raw.length; i++) {
+            result[2 * i] = HEX_DIGITS[(raw[i] >>> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[raw[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, which must
+     *  have an even number of digits. */
+    static byte[] hexToBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2),
+                                                16);
+        }
+        return result;
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
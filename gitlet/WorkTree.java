@@ -0,0 +1,221 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Lists the files of a working tree. Directories are read in parallel on
+ * the common fork-join pool, one task per directory, and the paths found
+ * are collected in a concurrent set. A file is known throughout gitlet by
+ * its path relative to the top of the tree, with its parts separated by
+ * "/" whatever the platform, so files of the same name in different
+ * directories are distinct. Hidden directories (.gitlet among
+ * them) are skipped, as is anything matching a pattern in the optional
+ * .gitletignore file at the top of the tree; an ignored directory is not
+ * read at all. Patterns are globs, one per line, matched against both the
+ * path relative to the top and the bare name; lines starting with # are
+ * comments.
+ * @author Zheyuan Hu
+ */
+public class WorkTree {
+    /** name of the ignore file. */
+    static final String IGNORE_FILE = ".gitletignore";
+    /** characters that make a name on the command line a glob. */
+    private static final String GLOB_CHARS = "*?[{";
+    /** top of the tree. */
+    private final Path _root;
+    /** the ignore patterns. */
+    private final List<PathMatcher> _ignored = new ArrayList<>();
+
+    /**
+     * constructor. Reads the ignore file in ROOT, if there is one.
+     * @param root top of the working tree.
+     */
+    public WorkTree(File root) {
+        _root = root.toPath();
+        File ignore = new File(root, IGNORE_FILE);
+        if (ignore.isFile()) {
+            for (String line
+                     : Utils.readContentsAsString(ignore).split("\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    _ignored.add(FileSystems.getDefault()
+                                 .getPathMatcher("glob:" + line));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param path a file or directory in the tree.
+     * @return whether an ignore pattern matches PATH.
+     */
+    public boolean isIgnored(Path path) {
+        Path relative = _root.relativize(path);
+        Path name = path.getFileName();
+        for (PathMatcher matcher : _ignored) {
+            if (matcher.matches(relative) || matcher.matches(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path a path relative to the top of a tree.
+     * @return PATH with its parts separated by "/".
+     */
+    static String key(Path path) {
+        StringBuilder result = new StringBuilder();
+        for (Path part : path) {
+            if (result.length() > 0) {
+                result.append(TreeStore.SEPARATOR);
+            }
+            result.append(part);
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param name a file named on the command line, relative to the
+     *             working directory or absolute.
+     * @return its path relative to the top of the working tree, as gitlet
+     *         tracks it. A name outside the tree is returned normalized
+     *         but otherwise as it is, and so is never found.
+     */
+    static String key(String name) {
+        Path path = Paths.get(name).normalize();
+        if (path.isAbsolute()) {
+            path = CommandLineTools.CWD_DIR.toPath().toAbsolutePath()
+                .normalize().relativize(path);
+        }
+        return key(path);
+    }
+
+    /**
+     * @return paths of all the files in the tree that are not ignored.
+     */
+    public Set<String> files() {
+        Set<String> found = ConcurrentHashMap.newKeySet();
+        ForkJoinPool.commonPool().invoke(new Scan(_root, found));
+        return found;
+    }
+
+    /**
+     * @param dir a directory relative to the top of the tree.
+     * @return paths of all the files under DIR that are not ignored.
+     */
+    public Set<String> files(String dir) {
+        Set<String> found = ConcurrentHashMap.newKeySet();
+        ForkJoinPool.commonPool().invoke(new Scan(_root.resolve(dir), found));
+        return found;
+    }
+
+    /**
+     * @param operand a file, a directory or a glob named on the command
+     *                line.
+     * @return paths of the files it names: the file itself, every file
+     *         under the directory that is not ignored, or every file in
+     *         the tree that is not ignored and that the glob, taken
+     *         relative to the top of the tree, matches. A name that names
+     *         no file is returned as it is.
+     */
+    public List<String> expand(String operand) {
+        String name = key(operand);
+        List<String> matched = new ArrayList<>();
+        if (new File(name.isEmpty() ? "." : name).isDirectory()) {
+            matched.addAll(files(name));
+        } else if (!new File(name).exists() && isGlob(operand)) {
+            PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + name);
+            for (String file : files()) {
+                if (matcher.matches(Paths.get(file))) {
+                    matched.add(file);
+                }
+            }
+        }
+        return matched.isEmpty() ? List.of(name) : matched;
+    }
+
+    /**
+     * @param operand a name from the command line.
+     * @return whether it holds a glob's special characters.
+     */
+    private static boolean isGlob(String operand) {
+        for (char c : GLOB_CHARS.toCharArray()) {
+            if (operand.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path a file.
+     * @return its attributes, or null if it vanished or is a dangling
+     *         link.
+     */
+    private static BasicFileAttributes stat(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Task listing one directory and forking a task per subdirectory. */
+    private class Scan extends RecursiveAction {
+        /** serial ID. */
+        private static final long serialVersionUID = 1L;
+        /** directory to list. */
+        private final Path _dir;
+        /** names found so far. */
+        private final Set<String> _found;
+
+        /**
+         * constructor.
+         * @param dir directory to list.
+         * @param found names found so far.
+         */
+        Scan(Path dir, Set<String> found) {
+            _dir = dir;
+            _found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<Scan> subdirs = new ArrayList<>();
+            try (DirectoryStream<Path> entries =
+                     Files.newDirectoryStream(_dir)) {
+                for (Path entry : entries) {
+                    BasicFileAttributes attrs = stat(entry);
+                    if (attrs == null || isIgnored(entry)) {
+                        continue;
+                    } else if (attrs.isDirectory()) {
+                        if (!Files.isHidden(entry)) {
+                            subdirs.add(new Scan(entry, _found));
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        _found.add(key(_root.relativize(entry)));
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            invokeAll(subdirs);
+        }
+    }
+}
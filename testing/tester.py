@@ -3,7 +3,7 @@ from subprocess import \
      check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, makedirs, remove, access, W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -140,6 +140,7 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))